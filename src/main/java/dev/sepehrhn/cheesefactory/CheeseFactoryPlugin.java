@@ -4,15 +4,19 @@ import dev.sepehrhn.cheesefactory.barrel.CheeseBarrelManager;
 import dev.sepehrhn.cheesefactory.cheese.CheeseRegistry;
 import dev.sepehrhn.cheesefactory.command.CheeseFactoryCommand;
 import dev.sepehrhn.cheesefactory.item.CheeseItemManager;
+import dev.sepehrhn.cheesefactory.listener.BarrelChunkListener;
 import dev.sepehrhn.cheesefactory.listener.BarrelGuiListener;
 import dev.sepehrhn.cheesefactory.listener.BarrelSetupListener;
+import dev.sepehrhn.cheesefactory.listener.BarrelWorldListener;
 import dev.sepehrhn.cheesefactory.listener.CheeseConsumeListener;
 import dev.sepehrhn.cheesefactory.listener.CheeseConsumeListener;
 import dev.sepehrhn.cheesefactory.listener.CampfireCurdListener;
+import dev.sepehrhn.cheesefactory.listener.FermentationEffectsListener;
 import dev.sepehrhn.cheesefactory.listener.InoculatedMilkCraftListener;
 import dev.sepehrhn.cheesefactory.locale.LocaleManager;
 import dev.sepehrhn.cheesefactory.barrel.BarrelItemService;
 import dev.sepehrhn.cheesefactory.config.ConfigMigrator;
+import dev.sepehrhn.cheesefactory.integration.NexoItemsLoadListener;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -33,6 +37,7 @@ public final class CheeseFactoryPlugin extends JavaPlugin {
 
     @Override
     public void onEnable() {
+        long started = System.nanoTime();
         try {
             saveDefaultConfig();
             ConfigMigrator migrator = new ConfigMigrator(this);
@@ -47,7 +52,7 @@ public final class CheeseFactoryPlugin extends JavaPlugin {
             this.itemManager = new CheeseItemManager(this);
             this.cheeseRegistry = new CheeseRegistry(this, itemManager.keys(), itemManager);
             this.cheeseRegistry.reload();
-            this.barrelItemService = new BarrelItemService(this, itemManager.keys());
+            this.barrelItemService = new BarrelItemService(this, itemManager.keys(), itemManager.classifier());
             this.barrelItemService.reload();
             this.barrelManager = new CheeseBarrelManager(this, itemManager, cheeseRegistry, barrelItemService);
 
@@ -55,7 +60,7 @@ public final class CheeseFactoryPlugin extends JavaPlugin {
             registerCommands();
             announceIntegrations();
 
-            getLogger().info("CheeseFactory enabled.");
+            getLogger().info("CheeseFactory enabled in " + (System.nanoTime() - started) / 1_000_000L + " ms.");
         } catch (Throwable t) {
             getLogger().severe("Failed to enable CheeseFactory: " + t.getMessage());
             t.printStackTrace();
@@ -104,12 +109,27 @@ public final class CheeseFactoryPlugin extends JavaPlugin {
         localeManager.reloadLocales();
     }
 
+    /**
+     * Rebuilds the cached item templates without re-reading any config.
+     */
+    public void rebuildItemTemplates() {
+        itemManager.rebuildTemplates();
+        cheeseRegistry.rebuildTemplates();
+        barrelItemService.rebuildTemplates();
+    }
+
     private void registerListeners() {
         Bukkit.getPluginManager().registerEvents(new CampfireCurdListener(this, itemManager), this);
         Bukkit.getPluginManager().registerEvents(new BarrelSetupListener(this, barrelManager, barrelItemService), this);
         Bukkit.getPluginManager().registerEvents(new BarrelGuiListener(barrelManager), this);
-        Bukkit.getPluginManager().registerEvents(new CheeseConsumeListener(itemManager.keys(), cheeseRegistry), this);
+        Bukkit.getPluginManager().registerEvents(new BarrelChunkListener(barrelManager), this);
+        Bukkit.getPluginManager().registerEvents(new BarrelWorldListener(barrelManager), this);
+        Bukkit.getPluginManager().registerEvents(new FermentationEffectsListener(barrelManager.getEffects()), this);
+        Bukkit.getPluginManager().registerEvents(new CheeseConsumeListener(itemManager.classifier(), cheeseRegistry), this);
         Bukkit.getPluginManager().registerEvents(new InoculatedMilkCraftListener(this, itemManager), this);
+        if (getServer().getPluginManager().getPlugin("Nexo") != null) {
+            Bukkit.getPluginManager().registerEvents(new NexoItemsLoadListener(this), this);
+        }
         getLogger().info("Registered cheese barrel listeners for placement and breaking.");
     }
 
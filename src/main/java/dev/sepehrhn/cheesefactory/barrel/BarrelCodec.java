@@ -0,0 +1,235 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Binary encoding of barrel snapshots.
+ * <p>
+ * Layout: the magic {@code CFBR}, a format version byte, a table of the world names used, a record count and
+ * then one record per barrel. Records refer to their world by table index and store coordinates and progress
+ * as varints; only slots that are actually fermenting are written. Items use Paper's
+ * {@link ItemStack#serializeAsBytes()}, which carries its own data version so the server can upgrade them.
+ * Reading keeps item bytes as they are; see {@link BarrelItems}.
+ */
+final class BarrelCodec {
+
+    static final int MAGIC = 0x43464252; // "CFBR"
+    static final int VERSION = 1;
+
+    private BarrelCodec() {
+    }
+
+    static void write(DataOutputStream out, List<BarrelSnapshot> snapshots) throws IOException {
+        Map<String, Integer> worldIds = new HashMap<>();
+        List<String> worlds = new ArrayList<>();
+        for (BarrelSnapshot snapshot : snapshots) {
+            if (worldIds.putIfAbsent(snapshot.key().world(), worlds.size()) == null) {
+                worlds.add(snapshot.key().world());
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarInt(out, worlds.size());
+        for (String world : worlds) {
+            out.writeUTF(world);
+        }
+        writeVarInt(out, snapshots.size());
+        for (BarrelSnapshot snapshot : snapshots) {
+            writeRecord(out, worldIds.get(snapshot.key().world()), snapshot);
+        }
+    }
+
+    /**
+     * Reads records one at a time and hands each to the consumer.
+     *
+     * @return the number of records read
+     */
+    static int read(DataInputStream in, Consumer<BarrelSnapshot> consumer) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a barrel data file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported barrel data version " + version);
+        }
+        String[] worlds = new String[readVarInt(in)];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = in.readUTF();
+        }
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            consumer.accept(readRecord(in, worlds));
+        }
+        return count;
+    }
+
+    /**
+     * Writes a single snapshot with its world name inline, for formats that store barrels one at a time.
+     */
+    static void writeSnapshot(DataOutputStream out, BarrelSnapshot snapshot) throws IOException {
+        out.writeUTF(snapshot.key().world());
+        writeRecord(out, 0, snapshot);
+    }
+
+    static BarrelSnapshot readSnapshot(DataInputStream in) throws IOException {
+        return readRecord(in, new String[]{in.readUTF()});
+    }
+
+    static void writeKey(DataOutputStream out, BarrelKey key) throws IOException {
+        out.writeUTF(key.world());
+        writeVarInt(out, zigZag(key.x()));
+        writeVarInt(out, zigZag(key.y()));
+        writeVarInt(out, zigZag(key.z()));
+    }
+
+    static BarrelKey readKey(DataInputStream in) throws IOException {
+        String world = in.readUTF();
+        return new BarrelKey(world, unZigZag(readVarInt(in)), unZigZag(readVarInt(in)), unZigZag(readVarInt(in)));
+    }
+
+    private static void writeRecord(DataOutputStream out, int worldId, BarrelSnapshot snapshot) throws IOException {
+        BarrelKey key = snapshot.key();
+        writeVarInt(out, worldId);
+        writeVarInt(out, zigZag(key.x()));
+        writeVarInt(out, zigZag(key.y()));
+        writeVarInt(out, zigZag(key.z()));
+
+        int[] progress = snapshot.progress();
+        long[] startTimes = snapshot.startTimes();
+        int slots = 0;
+        for (int i = 0; i < progress.length; i++) {
+            if (progress[i] != 0 || startTimes[i] != CheeseBarrelState.NOT_STARTED) {
+                slots++;
+            }
+        }
+        writeVarInt(out, slots);
+        for (int i = 0; i < progress.length; i++) {
+            if (progress[i] != 0 || startTimes[i] != CheeseBarrelState.NOT_STARTED) {
+                writeVarInt(out, i);
+                writeVarInt(out, progress[i]);
+                // 0 stands for "not started" so the common case stays one byte
+                writeVarLong(out, startTimes[i] == CheeseBarrelState.NOT_STARTED ? 0 : zigZag(startTimes[i]) + 1);
+            }
+        }
+
+        BarrelItems items = snapshot.items();
+        if (items == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        // Snapshots can be kept around by barrels and storage; once written they only need the bytes
+        byte[][] encoded = items.compact().encoded();
+        writeVarInt(out, encoded.length + 1);
+        for (byte[] bytes : encoded) {
+            if (bytes == null) {
+                writeVarInt(out, 0);
+                continue;
+            }
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static BarrelSnapshot readRecord(DataInputStream in, String[] worlds) throws IOException {
+        String world = worlds[readVarInt(in)];
+        int x = unZigZag(readVarInt(in));
+        int y = unZigZag(readVarInt(in));
+        int z = unZigZag(readVarInt(in));
+
+        int[] progress = new int[27];
+        long[] startTimes = new long[27];
+        Arrays.fill(startTimes, CheeseBarrelState.NOT_STARTED);
+        int slots = readVarInt(in);
+        for (int i = 0; i < slots; i++) {
+            int slot = readVarInt(in);
+            int value = readVarInt(in);
+            long start = readVarLong(in);
+            if (slot < progress.length) {
+                progress[slot] = value;
+                startTimes[slot] = start == 0 ? CheeseBarrelState.NOT_STARTED : unZigZag(start - 1);
+            }
+        }
+
+        BarrelItems items = null;
+        int itemCount = readVarInt(in) - 1;
+        if (itemCount >= 0) {
+            byte[][] encoded = new byte[itemCount][];
+            for (int i = 0; i < itemCount; i++) {
+                int length = readVarInt(in);
+                if (length > 0) {
+                    encoded[i] = new byte[length];
+                    in.readFully(encoded[i]);
+                }
+            }
+            items = BarrelItems.ofBytes(encoded);
+        }
+        return new BarrelSnapshot(new BarrelKey(world, x, y, z), progress, startTimes, items);
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varlong too long");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -6,6 +6,8 @@ import dev.sepehrhn.cheesefactory.integration.CraftEngineItemProvider;
 import dev.sepehrhn.cheesefactory.integration.ExternalItemProvider;
 import dev.sepehrhn.cheesefactory.integration.NexoItemProvider;
 import dev.sepehrhn.cheesefactory.item.CheeseKeys;
+import dev.sepehrhn.cheesefactory.item.FactoryItem;
+import dev.sepehrhn.cheesefactory.item.ItemClassifier;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -26,6 +28,7 @@ public class BarrelItemService {
 
     private final CheeseFactoryPlugin plugin;
     private final CheeseKeys keys;
+    private final ItemClassifier classifier;
     private final MiniMessage mm = MiniMessage.miniMessage();
 
     private boolean hasNexo;
@@ -37,10 +40,12 @@ public class BarrelItemService {
     private List<String> rawLore = List.of();
     private CustomIdDefinition customId = DEFAULT_CUSTOM_ID;
     private CustomIdDefinition customIdOpen = DEFAULT_CUSTOM_ID;
+    private volatile ItemStack barrelTemplate;
 
-    public BarrelItemService(CheeseFactoryPlugin plugin, CheeseKeys keys) {
+    public BarrelItemService(CheeseFactoryPlugin plugin, CheeseKeys keys, ItemClassifier classifier) {
         this.plugin = plugin;
         this.keys = keys;
+        this.classifier = classifier;
     }
 
     public void reload() {
@@ -61,9 +66,21 @@ public class BarrelItemService {
         if (legacy.exists()) {
             log.warning("Legacy cheese_barrel.yml detected. Cheese barrel configuration now lives under 'cheese_barrel' in config.yml.");
         }
+        rebuildTemplates();
+    }
+
+    /**
+     * Rebuilds the barrel item template from the current config, e.g. after a reload or once Nexo has loaded its items.
+     */
+    public void rebuildTemplates() {
+        barrelTemplate = buildBarrelItem();
     }
 
     public ItemStack createBarrelItem() {
+        return barrelTemplate.clone();
+    }
+
+    private ItemStack buildBarrelItem() {
         ResolvedItem resolved = resolveBaseItem(customId);
         ItemStack base = resolved.stack();
         ItemMeta meta = base.getItemMeta();
@@ -79,14 +96,12 @@ public class BarrelItemService {
 
         meta.getPersistentDataContainer().set(keys.barrelItem(), PersistentDataType.BYTE, (byte) 1);
         base.setItemMeta(meta);
+        classifier.learn(base.getType(), !"minecraft".equals(resolved.type()));
         return base;
     }
 
     public boolean isBarrelItem(ItemStack stack) {
-        if (stack == null || !stack.hasItemMeta()) {
-            return false;
-        }
-        return stack.getItemMeta().getPersistentDataContainer().has(keys.barrelItem(), PersistentDataType.BYTE);
+        return classifier.is(stack, FactoryItem.Kind.BARREL);
     }
 
     private CustomIdDefinition parseCustomId(FileConfiguration cfg, String path, Logger log) {
@@ -0,0 +1,91 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * A barrel's stored inventory contents, kept either as item stacks or as the bytes storage read them from.
+ * <p>
+ * Stored barrels are not deserialized until they are ticked, opened or inspected, and contents that never
+ * changed are written back without serializing them again. The contents never change once handed out.
+ */
+final class BarrelItems {
+
+    private byte[][] encoded; // Per slot, null for an empty slot
+    private ItemStack[] stacks;
+
+    private BarrelItems(byte[][] encoded, ItemStack[] stacks) {
+        this.encoded = encoded;
+        this.stacks = stacks;
+    }
+
+    /**
+     * @param stacks copies nobody else holds on to
+     */
+    static BarrelItems ofStacks(ItemStack[] stacks) {
+        return new BarrelItems(null, stacks);
+    }
+
+    static BarrelItems ofBytes(byte[][] encoded) {
+        return new BarrelItems(encoded, null);
+    }
+
+    /**
+     * Serializes the stacks right away and keeps only the bytes, for contents that are put aside.
+     */
+    static BarrelItems encode(ItemStack[] stacks) {
+        return new BarrelItems(null, stacks).compact();
+    }
+
+    /**
+     * Drops the stacks once they are serialized, leaving only the bytes.
+     *
+     * @return this instance
+     */
+    synchronized BarrelItems compact() {
+        encoded();
+        stacks = null;
+        return this;
+    }
+
+    int size() {
+        byte[][] bytes = encoded;
+        return bytes != null ? bytes.length : stacks.length;
+    }
+
+    /**
+     * Copies of the stored stacks. Stacks read from storage are deserialized on every call and not kept, since
+     * storage may hold on to this instance long after the barrel built its inventory from it.
+     */
+    synchronized ItemStack[] stacks() {
+        if (stacks == null) {
+            ItemStack[] decoded = new ItemStack[encoded.length];
+            for (int i = 0; i < encoded.length; i++) {
+                if (encoded[i] != null) {
+                    decoded[i] = ItemStack.deserializeBytes(encoded[i]);
+                }
+            }
+            return decoded;
+        }
+        ItemStack[] copy = new ItemStack[stacks.length];
+        for (int i = 0; i < stacks.length; i++) {
+            copy[i] = stacks[i] == null ? null : stacks[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * The serialized stacks, one entry per slot with null for empty slots. Callers must not modify them.
+     */
+    synchronized byte[][] encoded() {
+        if (encoded == null) {
+            encoded = new byte[stacks.length][];
+            for (int i = 0; i < stacks.length; i++) {
+                ItemStack item = stacks[i];
+                if (item != null && !item.getType().isAir() && item.getAmount() > 0) {
+                    encoded[i] = item.serializeAsBytes();
+                }
+            }
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,14 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.Location;
+
+/**
+ * Identifies a barrel in storage. Keyed by world name, as barrels.yml always has been, so entries survive for
+ * worlds that are not loaded.
+ */
+record BarrelKey(String world, int x, int y, int z) {
+
+    static BarrelKey of(Location loc) {
+        return new BarrelKey(loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+}
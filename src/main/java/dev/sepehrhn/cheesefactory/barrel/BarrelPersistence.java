@@ -0,0 +1,204 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Saves barrels as they change instead of all at once on shutdown.
+ * <p>
+ * Barrels are marked dirty when their contents or fermentation state change. An autosave, or a world save,
+ * snapshots just the dirty ones on their owning region threads and hands the snapshots to {@link BarrelStorage},
+ * which writes them out on its own thread. Storage only ever sees these immutable snapshots; a barrel that did
+ * not change since its last snapshot hands out the same one again. On shutdown only what changed since the last save is left to flush.
+ */
+public class BarrelPersistence {
+
+    private static final long STALE_ROUND_NANOS = 60_000_000_000L;
+
+    private final Plugin plugin;
+    private final BarrelStorage storage;
+    private final Predicate<CheeseBarrelState> isRegistered;
+    private final Set<CheeseBarrelState> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<SaveRound> inFlight = new AtomicReference<>();
+    private ScheduledTask autosaveTask;
+
+    public BarrelPersistence(Plugin plugin, BarrelStorage storage, Predicate<CheeseBarrelState> isRegistered) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.isRegistered = isRegistered;
+    }
+
+    public void markDirty(CheeseBarrelState state) {
+        state.markChanged();
+        dirty.add(state);
+    }
+
+    public void markRemoved(CheeseBarrelState state) {
+        dirty.remove(state);
+        storage.remove(BarrelKey.of(state.getLocation()));
+    }
+
+    /**
+     * @param intervalTicks ticks between autosaves, 0 or less to only save with the world and on shutdown
+     */
+    public void setAutosaveInterval(long intervalTicks) {
+        if (autosaveTask != null) {
+            autosaveTask.cancel();
+            autosaveTask = null;
+        }
+        if (intervalTicks > 0) {
+            autosaveTask = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, task -> saveAsync(), intervalTicks, intervalTicks);
+        }
+    }
+
+    /**
+     * Snapshots every dirty barrel on its region thread and writes the result in the background. Does nothing
+     * while a previous save is still in flight; barrels changed meanwhile are picked up by the next one.
+     * <p>
+     * A save whose snapshot tasks have not all run after {@link #STALE_ROUND_NANOS} is given up on, e.g. when a
+     * region stopped before running its task, and its remaining barrels are marked dirty again.
+     */
+    public void saveAsync() {
+        SaveRound running = inFlight.get();
+        if (running != null) {
+            if (!running.isStale() || !inFlight.compareAndSet(running, null)) {
+                return;
+            }
+            plugin.getLogger().warning("A barrel save did not finish snapshotting in time; retrying its barrels.");
+            running.abandon();
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        SaveRound round = new SaveRound();
+        if (!inFlight.compareAndSet(null, round)) {
+            return;
+        }
+        List<CheeseBarrelState> batch = drainDirty();
+        if (batch.isEmpty()) {
+            inFlight.compareAndSet(round, null);
+            return;
+        }
+        round.outstanding.addAll(batch);
+        for (CheeseBarrelState state : batch) {
+            Location loc = state.getLocation();
+            World world = loc.getWorld();
+            if (world != null && world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+                Bukkit.getRegionScheduler().execute(plugin, loc, () -> round.snapshot(state));
+            } else {
+                // Nothing mutates a barrel while its chunk is unloaded, so it can be copied from here
+                round.snapshot(state);
+            }
+        }
+    }
+
+    /**
+     * Snapshots the dirty barrels among ones about to unload with their chunk or world. Must be called on their
+     * region thread.
+     */
+    public void saveUnloading(List<CheeseBarrelState> unloading) {
+        for (CheeseBarrelState state : unloading) {
+            if (dirty.remove(state)) {
+                snapshot(state);
+            }
+        }
+    }
+
+    /**
+     * Writes everything still dirty and waits for it. Only called on shutdown, once barrels stopped ticking.
+     */
+    public void flush() {
+        setAutosaveInterval(0);
+        SaveRound running = inFlight.getAndSet(null);
+        if (running != null) {
+            running.abandon(); // Its queued snapshot tasks will not run anymore
+        }
+        for (CheeseBarrelState state : drainDirty()) {
+            snapshot(state);
+        }
+        storage.close();
+    }
+
+    private List<CheeseBarrelState> drainDirty() {
+        List<CheeseBarrelState> batch = new ArrayList<>(dirty.size());
+        for (CheeseBarrelState state : dirty) {
+            if (dirty.remove(state)) {
+                batch.add(state);
+            }
+        }
+        return batch;
+    }
+
+    private void snapshot(CheeseBarrelState state) {
+        // A barrel broken after it was queued must not be written back
+        if (isRegistered.test(state)) {
+            storage.put(state.snapshot());
+        }
+    }
+
+    /**
+     * One autosave: the barrels still waiting for their snapshot, and the storage write once all are taken.
+     */
+    private final class SaveRound {
+
+        private final long started = System.nanoTime();
+        private final Set<CheeseBarrelState> outstanding = ConcurrentHashMap.newKeySet();
+
+        private void snapshot(CheeseBarrelState state) {
+            if (!outstanding.contains(state)) {
+                return; // Abandoned; the barrel is dirty again
+            }
+            try {
+                BarrelPersistence.this.snapshot(state);
+            } catch (RuntimeException e) {
+                dirty.add(state);
+                plugin.getLogger().severe("Failed to snapshot cheese barrel at " + BarrelKey.of(state.getLocation()) + ": " + e.getMessage());
+            } finally {
+                if (outstanding.remove(state) && outstanding.isEmpty()) {
+                    write();
+                }
+            }
+        }
+
+        private void write() {
+            CompletableFuture<Void> written;
+            try {
+                written = storage.saveAsync();
+            } catch (RuntimeException e) {
+                written = CompletableFuture.failedFuture(e);
+            }
+            written.whenComplete((ignored, error) -> {
+                inFlight.compareAndSet(this, null);
+                if (error != null) {
+                    plugin.getLogger().severe("Barrel autosave failed: " + error.getMessage());
+                }
+            });
+        }
+
+        /**
+         * Still waiting for snapshots long after it started. Once all are taken it waits for storage instead.
+         */
+        private boolean isStale() {
+            return !outstanding.isEmpty() && System.nanoTime() - started > STALE_ROUND_NANOS;
+        }
+
+        private void abandon() {
+            for (CheeseBarrelState state : outstanding) {
+                if (outstanding.remove(state)) {
+                    dirty.add(state);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * All registered cheese barrels, keyed by world id plus a packed block position.
+ * <p>
+ * Position lookups are allocation-free: they hash a primitive long into an open-addressing table under an
+ * optimistic read stamp and only fall back to a read lock when a writer got in the way. Each world also keeps
+ * a chunk-key index so chunk events can find their barrels without scanning the whole registry.
+ */
+public class BarrelRegistry {
+
+    private final Map<UUID, WorldBarrels> worlds = new ConcurrentHashMap<>();
+
+    /**
+     * Packs a block position into a long using the same layout as Paper's {@code Block#getBlockKey}.
+     */
+    public static long blockKey(int x, int y, int z) {
+        return ((long) x & 0x7FFFFFFL) | (((long) z & 0x7FFFFFFL) << 27) | ((long) y << 54);
+    }
+
+    /**
+     * Packs chunk coordinates into a long using the same layout as Paper's {@code Chunk#getChunkKey}.
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX & 0xFFFFFFFFL) | (((long) chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    public CheeseBarrelState get(World world, int x, int y, int z) {
+        WorldBarrels barrels = worlds.get(world.getUID());
+        if (barrels == null) {
+            return null;
+        }
+        long key = blockKey(x, y, z);
+        long stamp = barrels.lock.tryOptimisticRead();
+        CheeseBarrelState state = barrels.byPos.get(key);
+        if (!barrels.lock.validate(stamp)) {
+            stamp = barrels.lock.readLock();
+            try {
+                state = barrels.byPos.get(key);
+            } finally {
+                barrels.lock.unlockRead(stamp);
+            }
+        }
+        return state;
+    }
+
+    public boolean isRegistered(World world, int x, int y, int z) {
+        return get(world, x, y, z) != null;
+    }
+
+    /**
+     * Registers a barrel unless one is already registered at its position.
+     *
+     * @return the barrel already registered there, or null if the given one was added
+     */
+    public CheeseBarrelState putIfAbsent(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        WorldBarrels barrels = worlds.computeIfAbsent(loc.getWorld().getUID(), uid -> new WorldBarrels());
+        long key = blockKey(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        long stamp = barrels.lock.writeLock();
+        try {
+            CheeseBarrelState existing = barrels.byPos.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            barrels.byPos.put(key, state);
+            long chunk = chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+            List<CheeseBarrelState> inChunk = barrels.byChunk.get(chunk);
+            if (inChunk == null) {
+                inChunk = new ArrayList<>(4);
+                barrels.byChunk.put(chunk, inChunk);
+            }
+            inChunk.add(state);
+            return null;
+        } finally {
+            barrels.lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        WorldBarrels barrels = worlds.get(loc.getWorld().getUID());
+        if (barrels == null) {
+            return false;
+        }
+        long key = blockKey(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        long stamp = barrels.lock.writeLock();
+        try {
+            if (barrels.byPos.get(key) != state) {
+                return false;
+            }
+            barrels.byPos.remove(key);
+            long chunk = chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+            List<CheeseBarrelState> inChunk = barrels.byChunk.get(chunk);
+            if (inChunk != null) {
+                inChunk.remove(state);
+                if (inChunk.isEmpty()) {
+                    barrels.byChunk.remove(chunk);
+                }
+            }
+            return true;
+        } finally {
+            barrels.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return a snapshot of the barrels in a chunk, empty if there are none
+     */
+    public List<CheeseBarrelState> inChunk(World world, int chunkX, int chunkZ) {
+        WorldBarrels barrels = worlds.get(world.getUID());
+        if (barrels == null) {
+            return List.of();
+        }
+        long stamp = barrels.lock.readLock();
+        try {
+            List<CheeseBarrelState> inChunk = barrels.byChunk.get(chunkKey(chunkX, chunkZ));
+            return inChunk == null ? List.of() : new ArrayList<>(inChunk);
+        } finally {
+            barrels.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return a snapshot of every registered barrel
+     */
+    public List<CheeseBarrelState> all() {
+        List<CheeseBarrelState> all = new ArrayList<>();
+        for (WorldBarrels barrels : worlds.values()) {
+            long stamp = barrels.lock.readLock();
+            try {
+                barrels.byPos.forEachValue(all::add);
+            } finally {
+                barrels.lock.unlockRead(stamp);
+            }
+        }
+        return all;
+    }
+
+    public int size() {
+        int size = 0;
+        for (WorldBarrels barrels : worlds.values()) {
+            long stamp = barrels.lock.readLock();
+            try {
+                size += barrels.byPos.size();
+            } finally {
+                barrels.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a snapshot of the barrels in a world, empty if there are none
+     */
+    public List<CheeseBarrelState> inWorld(World world) {
+        WorldBarrels barrels = worlds.get(world.getUID());
+        if (barrels == null) {
+            return List.of();
+        }
+        List<CheeseBarrelState> inWorld = new ArrayList<>();
+        long stamp = barrels.lock.readLock();
+        try {
+            barrels.byPos.forEachValue(inWorld::add);
+        } finally {
+            barrels.lock.unlockRead(stamp);
+        }
+        return inWorld;
+    }
+
+    /**
+     * Drops every barrel of a world, e.g. when it unloads.
+     */
+    public void removeWorld(World world) {
+        worlds.remove(world.getUID());
+    }
+
+    public void clear() {
+        worlds.clear();
+    }
+
+    private static final class WorldBarrels {
+        private final StampedLock lock = new StampedLock();
+        private final LongObjectHashMap<CheeseBarrelState> byPos = new LongObjectHashMap<>();
+        private final LongObjectHashMap<List<CheeseBarrelState>> byChunk = new LongObjectHashMap<>();
+    }
+}
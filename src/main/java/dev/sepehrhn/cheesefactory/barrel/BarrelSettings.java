@@ -0,0 +1,156 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import dev.sepehrhn.cheesefactory.config.ConfigUtil;
+import org.bukkit.Color;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Barrel settings from config.yml, compiled once per reload into plain values.
+ * <p>
+ * Instances never change. A reload compiles a new one and publishes it through a single volatile field, so
+ * region threads always see one consistent set of settings and never look anything up in the configuration.
+ */
+public record BarrelSettings(
+        Fermentation fermentation,
+        Scheduler scheduler,
+        Effects effects,
+        BarrelSounds barrelSounds,
+        long autosaveIntervalTicks
+) {
+
+    /**
+     * @param ticks        time a curd takes to turn into cheese
+     * @param tickInterval period of the pass that plays fermenting effects
+     */
+    public record Fermentation(int ticks, int tickInterval, FermentationMode mode) {
+    }
+
+    /**
+     * @param budgetNanos  time a group may spend per run before carrying work over to the next tick
+     * @param effectsMspt  average MSPT above which fermentation effects are skipped
+     * @param slowdownMspt average MSPT above which group passes run less often
+     */
+    public record Scheduler(long budgetNanos, double effectsMspt, double slowdownMspt) {
+
+        static final Scheduler DEFAULTS = new Scheduler(2_000_000L, 45.0, 50.0);
+    }
+
+    /**
+     * @param dustOptions colors picked from for dust particles; never modified
+     */
+    public record Effects(
+            boolean particlesEnabled,
+            Particle particleType,
+            Particle.DustOptions[] dustOptions,
+            int particleCount,
+            double particleOffsetY,
+            boolean soundsEnabled,
+            net.kyori.adventure.sound.Sound sound,
+            double soundChance,
+            double radiusSquared,
+            int particlesPerSecond
+    ) {
+    }
+
+    public record BarrelSounds(Sound open, Sound close, float volume, float pitch) {
+    }
+
+    /**
+     * Reads and validates every barrel setting, logging a warning and using the default for invalid values.
+     */
+    public static BarrelSettings compile(FileConfiguration config, Logger logger) {
+        return new BarrelSettings(
+                fermentation(config, logger),
+                new Scheduler(
+                        Math.max(1, config.getLong("fermentation.scheduler.budget_micros", 2000)) * 1000L,
+                        config.getDouble("fermentation.scheduler.effects_mspt", 45.0),
+                        config.getDouble("fermentation.scheduler.slowdown_mspt", 50.0)
+                ),
+                effects(config, logger),
+                new BarrelSounds(
+                        sound(config, logger, "cheese_barrel.sounds.open", Sound.BLOCK_BARREL_OPEN),
+                        sound(config, logger, "cheese_barrel.sounds.close", Sound.BLOCK_BARREL_CLOSE),
+                        (float) config.getDouble("cheese_barrel.sounds.volume", 1.0),
+                        (float) config.getDouble("cheese_barrel.sounds.pitch", 1.0)
+                ),
+                config.getLong("storage.autosave_interval_ticks", 6000)
+        );
+    }
+
+    private static Fermentation fermentation(FileConfiguration config, Logger logger) {
+        int ticks = ConfigUtil.getInt(config, logger, "fermentation.time_ticks", "fermentation.time-ticks", 9600);
+        int tickInterval = Math.max(1, ConfigUtil.getInt(config, logger, "fermentation.tick_interval", "fermentation.tick-interval", 20));
+        String modeStr = config.getString("fermentation.mode", "ticking");
+        FermentationMode mode = FermentationMode.parse(modeStr);
+        if (mode == null) {
+            logger.warning("Invalid fermentation mode '" + modeStr + "'; defaulting to ticking.");
+            mode = FermentationMode.TICKING;
+        }
+        return new Fermentation(ticks, tickInterval, mode);
+    }
+
+    private static Effects effects(FileConfiguration config, Logger logger) {
+        String pTypeStr = config.getString("fermentation.effects.particles.type", "DUST");
+        Particle particleType;
+        try {
+            particleType = Particle.valueOf(pTypeStr);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid particle type '" + pTypeStr + "'; defaulting to DUST.");
+            particleType = Particle.DUST;
+        }
+
+        List<Particle.DustOptions> dusts = new ArrayList<>();
+        for (String hex : config.getStringList("fermentation.effects.particles.colors")) {
+            try {
+                if (hex.startsWith("#")) hex = hex.substring(1);
+                int rgb = Integer.parseInt(hex, 16);
+                dusts.add(new Particle.DustOptions(Color.fromRGB(rgb), 1.0f));
+            } catch (NumberFormatException e) {
+                logger.warning("Invalid color hex '" + hex + "'; ignoring.");
+            }
+        }
+        if (dusts.isEmpty()) {
+            dusts.add(new Particle.DustOptions(Color.YELLOW, 1.0f));
+            dusts.add(new Particle.DustOptions(Color.fromRGB(255, 215, 0), 1.0f)); // Gold
+        }
+
+        Sound soundType = sound(config, logger, "fermentation.effects.sounds.sound", Sound.BLOCK_BREWING_STAND_BREW);
+        float soundVolume = (float) config.getDouble("fermentation.effects.sounds.volume", 0.3);
+        float soundPitch = (float) config.getDouble("fermentation.effects.sounds.pitch", 0.5);
+
+        double radius = config.getDouble("fermentation.effects.radius", 24.0);
+        if (radius <= 0) {
+            logger.warning("fermentation.effects.radius must be positive; defaulting to 24.");
+            radius = 24.0;
+        }
+
+        return new Effects(
+                config.getBoolean("fermentation.effects.particles.enabled", true),
+                particleType,
+                dusts.toArray(new Particle.DustOptions[0]),
+                config.getInt("fermentation.effects.particles.count", 3),
+                config.getDouble("fermentation.effects.particles.offset_y", 1.1),
+                config.getBoolean("fermentation.effects.sounds.enabled", true),
+                net.kyori.adventure.sound.Sound.sound(soundType, net.kyori.adventure.sound.Sound.Source.BLOCK, soundVolume, soundPitch),
+                config.getDouble("fermentation.effects.sounds.chance", 0.2),
+                radius * radius,
+                Math.max(0, config.getInt("fermentation.effects.max_particles_per_player", 60))
+        );
+    }
+
+    private static Sound sound(FileConfiguration config, Logger logger, String path, Sound def) {
+        String name = config.getString(path, def.name());
+        try {
+            return Sound.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid sound '" + name + "'; defaulting to " + def.name() + ".");
+            return def;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+/**
+ * A copy of everything persisted about a barrel, taken on the barrel's region thread. Nothing holds on to the
+ * arrays or stacks afterwards, so storage can read it from any thread.
+ *
+ * @param items the inventory contents, or null if the barrel never had an inventory
+ */
+record BarrelSnapshot(BarrelKey key, int[] progress, long[] startTimes, BarrelItems items) {
+}
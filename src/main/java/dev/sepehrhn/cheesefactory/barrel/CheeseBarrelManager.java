@@ -2,23 +2,23 @@ package dev.sepehrhn.cheesefactory.barrel;
 
 import dev.sepehrhn.cheesefactory.CheeseFactoryPlugin;
 import dev.sepehrhn.cheesefactory.cheese.CheeseRegistry;
-import dev.sepehrhn.cheesefactory.config.ConfigUtil;
 import dev.sepehrhn.cheesefactory.item.CheeseItemManager;
-import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import org.bukkit.Bukkit;
-import org.bukkit.Color;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.Particle;
 import org.bukkit.Sound;
+import org.bukkit.World;
 import org.bukkit.block.Barrel;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 
 public class CheeseBarrelManager {
 
@@ -26,128 +26,268 @@ public class CheeseBarrelManager {
     private final CheeseItemManager itemManager;
     private final CheeseRegistry cheeseRegistry;
     private final BarrelItemService barrelItemService;
-    private final Map<Location, CheeseBarrelState> barrels = new ConcurrentHashMap<>();
-    private final Map<Location, ScheduledTask> barrelTasks = new ConcurrentHashMap<>();
+    private final BarrelRegistry barrels = new BarrelRegistry();
     private final BarrelStorage storage;
+    private final BarrelPersistence persistence;
+    private final ProgressStore progress;
+    private final FermentationTicker ticker;
+    private final FermentationEffects effects;
 
-    private int fermentationTicks;
-    private int tickInterval;
-    
-    // Effects Config
-    private boolean particlesEnabled;
-    private Particle particleType;
-    private java.util.List<Color> particleColors;
-    private int particleCount;
-    private double particleOffsetY;
-    
-    private boolean soundsEnabled;
-    private Sound soundType;
-    private float soundVolume;
-    private float soundPitch;
-    private double soundChance;
-
-    // Barrel GUI Sounds
-    private Sound barrelOpenSound;
-    private Sound barrelCloseSound;
-    private float barrelSoundVolume;
-    private float barrelSoundPitch;
+    // Replaced as a whole on reload; read once per operation so it never sees a mix of old and new settings
+    private volatile BarrelSettings settings;
 
     public CheeseBarrelManager(CheeseFactoryPlugin plugin, CheeseItemManager itemManager, CheeseRegistry cheeseRegistry, BarrelItemService barrelItemService) {
         this.plugin = plugin;
         this.itemManager = itemManager;
         this.cheeseRegistry = cheeseRegistry;
         this.barrelItemService = barrelItemService;
-        this.storage = new BarrelStorage(plugin.getDataFolder(), plugin.getLogger());
+        this.storage = createStorage();
+        this.persistence = new BarrelPersistence(plugin, storage, this::isLive);
+        this.progress = new ProgressStore(plugin.getDataFolder(), plugin.getLogger());
+        this.ticker = new FermentationTicker(plugin, this::tickBarrel, this::onDeadline, 20);
+        this.effects = new FermentationEffects(itemManager.keys());
         reload();
+        storage.open();
+        progress.open(plugin.getConfig().getBoolean("storage.memory_mapped_progress", true));
+        activateLoadedChunks();
     }
 
-    public void reload() {
-        var config = plugin.getConfig();
-        fermentationTicks = ConfigUtil.getInt(config, plugin.getLogger(), "fermentation.time_ticks", "fermentation.time-ticks", 9600);
-        tickInterval = Math.max(1, ConfigUtil.getInt(config, plugin.getLogger(), "fermentation.tick_interval", "fermentation.tick-interval", 20));
-        
-        // Load Effects
-        particlesEnabled = config.getBoolean("fermentation.effects.particles.enabled", true);
-        String pTypeStr = config.getString("fermentation.effects.particles.type", "DUST");
-        try {
-            particleType = Particle.valueOf(pTypeStr);
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("Invalid particle type '" + pTypeStr + "'; defaulting to DUST.");
-            particleType = Particle.DUST;
-        }
-        
-        particleColors = new java.util.ArrayList<>();
-        for (String hex : config.getStringList("fermentation.effects.particles.colors")) {
-            try {
-                if (hex.startsWith("#")) hex = hex.substring(1);
-                int rgb = Integer.parseInt(hex, 16);
-                particleColors.add(Color.fromRGB(rgb));
-            } catch (NumberFormatException e) {
-                plugin.getLogger().warning("Invalid color hex '" + hex + "'; ignoring.");
+    /**
+     * Loads the barrels of chunks that were already loaded before the plugin enabled, e.g. spawn chunks. Storage
+     * reads them in the background; the time until all of them are back is logged.
+     */
+    private void activateLoadedChunks() {
+        long started = System.nanoTime();
+        List<CompletableFuture<Integer>> pending = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                CompletableFuture<Integer> done = new CompletableFuture<>();
+                pending.add(done);
+                Bukkit.getRegionScheduler().execute(plugin, world, chunk.getX(), chunk.getZ(), () -> {
+                    if (!chunk.isLoaded()) {
+                        done.complete(0);
+                        return;
+                    }
+                    activate(chunk).whenComplete((count, error) -> done.complete(error == null ? count : 0));
+                });
             }
         }
-        if (particleColors.isEmpty()) {
-            particleColors.add(Color.YELLOW);
-            particleColors.add(Color.fromRGB(255, 215, 0)); // Gold
-        }
-        
-        particleCount = config.getInt("fermentation.effects.particles.count", 3);
-        particleOffsetY = config.getDouble("fermentation.effects.particles.offset_y", 1.1);
-        
-        soundsEnabled = config.getBoolean("fermentation.effects.sounds.enabled", true);
-        String sTypeStr = config.getString("fermentation.effects.sounds.sound", "BLOCK_BREWING_STAND_BREW");
-        try {
-            soundType = Sound.valueOf(sTypeStr);
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("Invalid sound type '" + sTypeStr + "'; defaulting to BLOCK_BREWING_STAND_BREW.");
-            soundType = Sound.BLOCK_BREWING_STAND_BREW;
-        }
-        soundVolume = (float) config.getDouble("fermentation.effects.sounds.volume", 0.3);
-        soundPitch = (float) config.getDouble("fermentation.effects.sounds.pitch", 0.5);
-        soundChance = config.getDouble("fermentation.effects.sounds.chance", 0.2);
-
-        // Load Barrel GUI Sounds
-        String openSoundStr = config.getString("cheese_barrel.sounds.open", "BLOCK_BARREL_OPEN");
-        try {
-            barrelOpenSound = Sound.valueOf(openSoundStr);
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("Invalid sound '" + openSoundStr + "'; defaulting to BLOCK_BARREL_OPEN.");
-            barrelOpenSound = Sound.BLOCK_BARREL_OPEN;
-        }
-
-        String closeSoundStr = config.getString("cheese_barrel.sounds.close", "BLOCK_BARREL_CLOSE");
-        try {
-            barrelCloseSound = Sound.valueOf(closeSoundStr);
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("Invalid sound '" + closeSoundStr + "'; defaulting to BLOCK_BARREL_CLOSE.");
-            barrelCloseSound = Sound.BLOCK_BARREL_CLOSE;
-        }
-
-        barrelSoundVolume = (float) config.getDouble("cheese_barrel.sounds.volume", 1.0);
-        barrelSoundPitch = (float) config.getDouble("cheese_barrel.sounds.pitch", 1.0);
-        
-        // Load saved barrels
-        var loaded = storage.load();
-        for (var state : loaded) {
-            barrels.put(state.getLocation(), state);
-        }
-        
-        rescheduleAll();
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).thenRun(() -> {
+            int restored = pending.stream().mapToInt(CompletableFuture::join).sum();
+            long millis = (System.nanoTime() - started) / 1_000_000L;
+            plugin.getLogger().info("Restored " + restored + " cheese barrels in " + pending.size() + " loaded chunks in " + millis + " ms.");
+        });
+    }
+
+    private BarrelStorage createStorage() {
+        String backendStr = plugin.getConfig().getString("storage.backend", "region_files");
+        StorageBackend backend = StorageBackend.parse(backendStr);
+        if (backend == null) {
+            plugin.getLogger().warning("Invalid storage backend '" + backendStr + "'; defaulting to region_files.");
+            backend = StorageBackend.REGION_FILES;
+        }
+        return switch (backend) {
+            case REGION_FILES -> new RegionFileBarrelStorage(plugin.getDataFolder(), plugin.getLogger());
+            case CHUNK_PDC -> new ChunkPdcBarrelStorage(plugin, itemManager.keys().chunkBarrels());
+            case JOURNAL -> new JournalBarrelStorage(plugin.getDataFolder(), plugin.getLogger());
+            case SQLITE -> new SqliteBarrelStorage(plugin.getDataFolder(), plugin.getLogger());
+        };
+    }
+
+    public void reload() {
+        BarrelSettings previous = settings;
+        BarrelSettings next = BarrelSettings.compile(plugin.getConfig(), plugin.getLogger());
+        settings = next;
+
+        persistence.setAutosaveInterval(next.autosaveIntervalTicks());
+        ticker.setInterval(next.fermentation().tickInterval());
+        ticker.setLimits(next.scheduler());
+        if (previous != null && previous.fermentation().ticks() != next.fermentation().ticks()) {
+            // Queued deadlines were computed from the old time; have every barrel recompute them when next visited
+            barrels.all().forEach(CheeseBarrelState::requestSettle);
+        }
+    }
+
+    public BarrelSettings getSettings() {
+        return settings;
+    }
+
+    private CheeseBarrelState restoreState(World world, BarrelSnapshot snapshot) {
+        BarrelKey key = snapshot.key();
+        CheeseBarrelState state = new CheeseBarrelState(new Location(world, key.x(), key.y(), key.z()));
+        int[] progress = snapshot.progress();
+        long[] startTimes = snapshot.startTimes();
+        for (int slot = 0; slot < progress.length; slot++) {
+            state.addProgress(slot, progress[slot]);
+            state.setStartTime(slot, startTimes[slot]);
+        }
+        state.setSavedItems(snapshot.items());
+        if (this.progress.restore(state)) {
+            // Progress read from a retired progress.map has to reach regular storage
+            persistence.markDirty(state);
+        }
+        return state;
     }
 
     public void shutdown() {
-        storage.save(barrels);
-        barrelTasks.values().forEach(ScheduledTask::cancel);
-        barrelTasks.clear();
+        var all = barrels.all();
+        if (settings.fermentation().mode() == FermentationMode.TICKING) {
+            // Freeze loaded barrels so time until their chunk next loads after a restart is not credited
+            for (CheeseBarrelState state : all) {
+                Location loc = state.getLocation();
+                if (loc.getWorld().isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+                    freeze(state, loc.getWorld().getGameTime());
+                }
+            }
+        }
+        ticker.shutdown();
+        persistence.flush();
+        progress.close();
         barrels.clear();
     }
 
+    /**
+     * Starts ticking the barrels of a chunk that just loaded. In game_time mode they also catch up on the
+     * next pass, since their chunk may have been unloaded past a completion deadline. Stored barrels of the
+     * chunk are registered first; if storage has to read them in the background, the chunk's barrels start once
+     * it is done, provided the chunk is still loaded.
+     */
+    public void activateChunk(Chunk chunk) {
+        activate(chunk);
+    }
+
+    /**
+     * @return the number of barrels that were restored from storage, once the chunk's barrels are ticking
+     */
+    private CompletableFuture<Integer> activate(Chunk chunk) {
+        World world = chunk.getWorld();
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        CompletableFuture<List<BarrelSnapshot>> stored = storage.loadChunk(world, chunkX, chunkZ);
+        if (stored.isDone() && !stored.isCompletedExceptionally()) {
+            return CompletableFuture.completedFuture(resumeChunk(world, chunkX, chunkZ, stored.join()));
+        }
+        CompletableFuture<Integer> resumed = new CompletableFuture<>();
+        stored.whenComplete((snapshots, error) -> {
+            if (error != null) {
+                plugin.getLogger().severe("Failed to load cheese barrels of chunk " + chunkX + "," + chunkZ
+                        + " in " + world.getName() + ": " + error.getMessage());
+            }
+            Bukkit.getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> {
+                int restored = 0;
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    restored = resumeChunk(world, chunkX, chunkZ, error == null ? snapshots : List.of());
+                }
+                resumed.complete(restored);
+            });
+        });
+        return resumed;
+    }
+
+    private int resumeChunk(World world, int chunkX, int chunkZ, List<BarrelSnapshot> snapshots) {
+        int restored = 0;
+        for (BarrelSnapshot snapshot : snapshots) {
+            BarrelKey key = snapshot.key();
+            // Live barrels win over stored ones, e.g. a barrel placed while the chunk was still being read
+            if (barrels.get(world, key.x(), key.y(), key.z()) == null
+                    && barrels.putIfAbsent(restoreState(world, snapshot)) == null) {
+                restored++;
+            }
+        }
+        for (CheeseBarrelState state : barrels.inChunk(world, chunkX, chunkZ)) {
+            state.requestSettle();
+            ticker.add(state);
+        }
+        return restored;
+    }
+
+    /**
+     * Picks up the barrels of a world that loaded after the plugin enabled. Chunks loading later are handled by
+     * {@link #activateChunk}.
+     */
+    public void loadWorld(World world) {
+        for (Chunk chunk : world.getLoadedChunks()) {
+            Bukkit.getRegionScheduler().execute(plugin, world, chunk.getX(), chunk.getZ(), () -> {
+                if (chunk.isLoaded()) {
+                    activate(chunk);
+                }
+            });
+        }
+    }
+
+    /**
+     * Saves and forgets every barrel of a world that is unloading so nothing keeps the world in memory. Storage
+     * keeps them for when the world loads again.
+     */
+    public void unloadWorld(World world) {
+        long now = world.getGameTime();
+        List<CheeseBarrelState> unloading = barrels.inWorld(world);
+        for (CheeseBarrelState state : unloading) {
+            Location loc = state.getLocation();
+            if (settings.fermentation().mode() == FermentationMode.TICKING && world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+                freeze(state, now);
+            }
+            ticker.remove(state);
+        }
+        persistence.saveUnloading(unloading);
+        barrels.removeWorld(world);
+        storage.unloadWorld(world.getName());
+        if (!unloading.isEmpty()) {
+            plugin.getLogger().info("Unloaded " + unloading.size() + " cheese barrels of world " + world.getName() + ".");
+        }
+    }
+
+    /**
+     * Puts a barrel back into the tick loop and has its fermenting slots rescanned on the next pass. Called when
+     * its contents may have changed; a barrel that turns out to hold no curd drops out of the loop again.
+     */
+    public void wake(CheeseBarrelState state) {
+        state.requestSettle();
+        ticker.add(state);
+        persistence.markDirty(state);
+    }
+
+    /**
+     * Saves changed barrels in the background, e.g. on autosave or when the worlds are saved.
+     */
+    public void saveAsync() {
+        persistence.saveAsync();
+    }
+
+    /**
+     * Stops ticking the barrels of a chunk that is unloading so they cost nothing while it stays unloaded.
+     * In ticking mode their progress is frozen into counters until the chunk loads again. Their inventories
+     * are packed into bytes and released; they are rebuilt when the barrel is next ticked or opened.
+     */
+    public void deactivateChunk(Chunk chunk) {
+        long now = chunk.getWorld().getGameTime();
+        var inChunk = barrels.inChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        for (CheeseBarrelState state : inChunk) {
+            if (settings.fermentation().mode() == FermentationMode.TICKING) {
+                freeze(state, now);
+            }
+            ticker.remove(state);
+        }
+        persistence.saveUnloading(inChunk);
+        storage.unloadChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        for (CheeseBarrelState state : inChunk) {
+            Inventory inv = state.getInventory();
+            if (inv != null && inv.getViewers().isEmpty()) {
+                state.evictInventory();
+            }
+        }
+    }
+
     public boolean isRegistered(Block block) {
-        return barrels.containsKey(block.getLocation().toBlockLocation());
+        return barrels.isRegistered(block.getWorld(), block.getX(), block.getY(), block.getZ());
     }
 
     public CheeseBarrelState getState(Block block) {
-        return barrels.get(block.getLocation().toBlockLocation());
+        return barrels.get(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    public int getBarrelCount() {
+        return barrels.size();
     }
 
     public boolean registerBarrel(Block block) {
@@ -157,9 +297,18 @@ public class CheeseBarrelManager {
         Location loc = block.getLocation().toBlockLocation();
         plugin.getLogger().info("[CheeseDebug] registerBarrel called for " + block.getType() + " at ("
                 + loc.getBlockX() + "," + loc.getBlockY() + "," + loc.getBlockZ() + ")");
-        boolean isNew = !barrels.containsKey(loc.toBlockLocation());
-        CheeseBarrelState state = barrels.computeIfAbsent(loc, this::createState);
-        scheduleBarrelTask(loc, state);
+        CheeseBarrelState state = barrels.get(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        boolean isNew = state == null;
+        if (isNew) {
+            CheeseBarrelState created = createState(loc);
+            CheeseBarrelState existing = barrels.putIfAbsent(created);
+            isNew = existing == null;
+            state = isNew ? created : existing;
+        }
+        ticker.add(state);
+        if (isNew) {
+            persistence.markDirty(state);
+        }
         if (block.getState() instanceof Barrel barrel) {
             barrel.setCustomName(getBarrelTitle());
             barrel.update();
@@ -168,10 +317,12 @@ public class CheeseBarrelManager {
     }
 
     public void removeBarrel(Block block, boolean dropBarrelItem) {
-        Location loc = block.getLocation().toBlockLocation();
-        cancelTask(loc);
-        var state = barrels.remove(loc);
-        if (state != null) {
+        Location loc = block.getLocation();
+        var state = getState(block);
+        if (state != null && barrels.remove(state)) {
+            ticker.remove(state);
+            persistence.markRemoved(state);
+            progress.release(state);
             dropInventoryContents(state);
         }
         if (dropBarrelItem && block.getWorld().isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
@@ -181,8 +332,12 @@ public class CheeseBarrelManager {
 
     public void openBarrel(Player player, Block block) {
         CheeseBarrelState state = getState(block);
+        if (state != null) {
+            refresh(state);
+        }
         if (state != null && state.getInventory() != null) {
-            playSound(block.getLocation(), barrelOpenSound);
+            BarrelSettings.BarrelSounds sounds = settings.barrelSounds();
+            playSound(block.getLocation(), sounds.open(), sounds);
             setBarrelOpen(block, true);
             player.openInventory(state.getInventory());
         }
@@ -190,11 +345,56 @@ public class CheeseBarrelManager {
 
     public void closeBarrel(Player player, Block block) {
         if (block != null && !block.getType().isAir()) {
-            playSound(block.getLocation(), barrelCloseSound);
+            BarrelSettings.BarrelSounds sounds = settings.barrelSounds();
+            playSound(block.getLocation(), sounds.close(), sounds);
             setBarrelOpen(block, false);
+            CheeseBarrelState state = getState(block);
+            if (state != null) {
+                refresh(state);
+                wake(state);
+            }
+        }
+    }
+
+    /**
+     * Brings a barrel up to date before its contents or progress are shown, producing anything that is overdue.
+     * Must be called on the barrel's region thread.
+     */
+    public void refresh(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        var world = loc.getWorld();
+        if (world != null && world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+            settle(state, world.getGameTime());
         }
     }
 
+    /**
+     * Progress of a slot in ticks, regardless of fermentation mode.
+     */
+    public int getProgress(CheeseBarrelState state, int slot) {
+        int fermentationTicks = settings.fermentation().ticks();
+        long start = state.getStartTime(slot);
+        if (start == CheeseBarrelState.NOT_STARTED) {
+            return Math.min(state.getProgress(slot), fermentationTicks);
+        }
+        var world = state.getLocation().getWorld();
+        long elapsed = world == null ? 0 : world.getGameTime() - start;
+        return (int) Math.max(0, Math.min(elapsed, fermentationTicks));
+    }
+
+    private boolean isLive(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        return barrels.get(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()) == state;
+    }
+
+    public int getFermentationTicks() {
+        return settings.fermentation().ticks();
+    }
+
+    public FermentationEffects getEffects() {
+        return effects;
+    }
+
     private void setBarrelOpen(Block block, boolean open) {
         if (barrelItemService.isNexoBarrel()) {
             barrelItemService.placeBarrel(block.getLocation(), open);
@@ -204,16 +404,17 @@ public class CheeseBarrelManager {
         }
     }
 
-    private void playSound(Location location, Sound sound) {
+    private void playSound(Location location, Sound sound, BarrelSettings.BarrelSounds sounds) {
         if (sound != null && location.getWorld() != null) {
-            location.getWorld().playSound(location, sound, barrelSoundVolume, barrelSoundPitch);
+            location.getWorld().playSound(location, sound, sounds.volume(), sounds.pitch());
         }
     }
 
     private void tickBarrel(CheeseBarrelState state) {
+        // Only barrels in loaded chunks are handed to the ticker, see activateChunk/deactivateChunk
         Location loc = state.getLocation();
         var world = loc.getWorld();
-        if (world == null || !world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+        if (world == null) {
             return;
         }
 
@@ -221,38 +422,117 @@ public class CheeseBarrelManager {
         if (block.getType().isAir()) {
             dropBarrelItem(loc.clone().add(0.5, 0.5, 0.5));
             dropInventoryContents(state);
-            removeState(loc);
+            removeState(state);
+            return;
+        }
+
+        if (state.needsSettle()) {
+            settle(state, world.getGameTime());
+        }
+        if (state.getFermentingMask() == 0) {
+            // Hibernate until an inventory change or chunk load wakes the barrel again
+            ticker.remove(state);
             return;
         }
+        // Completions are driven by the ticker's deadline queue; the periodic pass only plays effects
+        if (!ticker.isEffectsThrottled()) {
+            effects.playFermenting(settings.effects(), world, block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    private void onDeadline(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        var world = loc.getWorld();
+        if (world != null) {
+            settle(state, world.getGameTime());
+        }
+    }
+
+    /**
+     * Turns running start times back into plain progress counters, used in ticking mode when a barrel stops
+     * being loaded so the time it spends unloaded is not credited.
+     */
+    private void freeze(CheeseBarrelState state, long now) {
+        int fermentationTicks = settings.fermentation().ticks();
+        long[] starts = state.getAllStartTimes();
+        boolean changed = false;
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] != CheeseBarrelState.NOT_STARTED) {
+                state.resetProgress(i);
+                state.addProgress(i, (int) Math.max(0, Math.min(now - starts[i], fermentationTicks)));
+                state.clearStartTime(i);
+                changed = true;
+            }
+        }
+        state.requestSettle();
+        if (changed && !progress.write(state)) {
+            persistence.markDirty(state);
+        }
+    }
 
+    /**
+     * Catches a barrel up to the given world time in one pass: every slot whose curd has been fermenting for
+     * longer than the fermentation time produces its cheese now, one per elapsed period. The fermenting-slot
+     * mask and next deadline are recomputed from what is left and the deadline is queued with the ticker.
+     * <p>
+     * Slots without a start time pick up from their saved progress counter, which is how frozen (ticking mode)
+     * and legacy progress re-enter the world clock.
+     */
+    private void settle(CheeseBarrelState state, long now) {
+        BarrelSettings settings = this.settings;
+        int fermentationTicks = settings.fermentation().ticks();
+        state.clearSettleRequest();
+        Location loc = state.getLocation();
         Inventory inv = state.getInventory();
         if (inv == null) {
             inv = createInventory(loc, state);
         }
 
-        boolean anyFermenting = false;
+        long nextDeadline = Long.MAX_VALUE;
+        int mask = 0;
+        boolean produced = false;
+        boolean changed = false;
         for (int i = 0; i < inv.getSize(); i++) {
-            ItemStack slot = inv.getItem(i);
-            if (itemManager.isCurd(slot)) {
-                state.addProgress(i, tickInterval);
-                anyFermenting = true;
-                if (state.getProgress(i) >= fermentationTicks) {
-                    state.resetProgress(i);
-                    produceCheese(inv, i, block.getLocation());
-                }
-            } else {
+            long previousStart = state.getStartTime(i);
+            if (!itemManager.isCurd(inv.getItem(i))) {
+                changed |= previousStart != CheeseBarrelState.NOT_STARTED || state.getProgress(i) != 0;
+                state.clearStartTime(i);
                 state.resetProgress(i);
+                continue;
             }
-        }
-        
-        if (anyFermenting) {
-            if (particlesEnabled) {
-                spawnIndicator(block);
+            long start = previousStart;
+            if (start == CheeseBarrelState.NOT_STARTED) {
+                start = now - state.getProgress(i);
+                state.resetProgress(i);
+            }
+            while (now - start >= fermentationTicks && itemManager.isCurd(inv.getItem(i))) {
+                produceCheese(inv, i, loc);
+                start += fermentationTicks;
+                produced = true;
             }
-            if (soundsEnabled && Math.random() < soundChance) {
-                world.playSound(loc.clone().add(0.5, 0.5, 0.5), soundType, soundVolume, soundPitch);
+            if (itemManager.isCurd(inv.getItem(i))) {
+                state.setStartTime(i, start);
+                nextDeadline = Math.min(nextDeadline, start + fermentationTicks);
+                mask |= 1 << i;
+            } else {
+                state.clearStartTime(i);
+            }
+            changed |= state.getStartTime(i) != previousStart;
+        }
+        state.setNextDeadline(nextDeadline);
+        state.setFermentingMask(mask);
+        ticker.schedule(state, nextDeadline);
+        if (changed || produced) {
+            // Progress alone goes to the mapped progress file; the barrel is only saved when its contents changed
+            boolean mapped = progress.write(state);
+            if (produced || !mapped) {
+                persistence.markDirty(state);
             }
         }
+
+        if (produced && !ticker.isEffectsThrottled()) {
+            effects.playCompletion(settings.effects(), loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
     }
 
     private CheeseBarrelState createState(Location loc) {
@@ -264,52 +544,22 @@ public class CheeseBarrelManager {
     private Inventory createInventory(Location loc, CheeseBarrelState state) {
         Inventory inv = Bukkit.createInventory(state, 9, getBarrelTitle());
         if (state.getSavedItems() != null) {
-            inv.setContents(state.getSavedItems());
+            ItemStack[] contents = state.getSavedItems().stacks();
+            for (ItemStack item : contents) {
+                cheeseRegistry.upgradeLegacy(item); // Cheese stored by older versions
+            }
+            inv.setContents(contents);
             state.setSavedItems(null); // Clear after restoring
         }
         state.setInventory(inv);
         return inv;
     }
 
-    private void scheduleBarrelTask(Location loc, CheeseBarrelState state) {
-        cancelTask(loc);
-        ScheduledTask task = Bukkit.getRegionScheduler().runAtFixedRate(plugin, loc, scheduledTask -> tickBarrel(state), tickInterval, tickInterval);
-        barrelTasks.put(loc, task);
-    }
-
-    private void rescheduleAll() {
-        for (var entry : barrels.entrySet()) {
-            scheduleBarrelTask(entry.getKey(), entry.getValue());
-        }
-    }
-
-    private void cancelTask(Location loc) {
-        ScheduledTask task = barrelTasks.remove(loc);
-        if (task != null) {
-            task.cancel();
-        }
-    }
-
-    private void removeState(Location loc) {
-        cancelTask(loc);
-        barrels.remove(loc);
-    }
-
-    private void spawnIndicator(Block block) {
-        var world = block.getWorld();
-        Location loc = block.getLocation().add(0.5, particleOffsetY, 0.5);
-        
-        if (particleType == Particle.DUST) {
-            for (int i = 0; i < particleCount; i++) {
-                Color color = particleColors.get((int) (Math.random() * particleColors.size()));
-                Particle.DustOptions dust = new Particle.DustOptions(color, 1.0f);
-                // Spread slightly
-                double offsetX = (Math.random() - 0.5) * 0.5;
-                double offsetZ = (Math.random() - 0.5) * 0.5;
-                world.spawnParticle(Particle.DUST, loc.clone().add(offsetX, 0, offsetZ), 1, dust);
-            }
-        } else {
-            world.spawnParticle(particleType, loc, particleCount, 0.3, 0.2, 0.3, 0.1);
+    private void removeState(CheeseBarrelState state) {
+        ticker.remove(state);
+        if (barrels.remove(state)) {
+            persistence.markRemoved(state);
+            progress.release(state);
         }
     }
 
@@ -320,28 +570,30 @@ public class CheeseBarrelManager {
             inv.setItem(slot, current); // Update decremented stack
         }
 
-        var chosen = cheeseRegistry.randomCheese();
-        if (chosen.isEmpty()) {
-            plugin.getLogger().warning("Fermentation finished but no cheeses are loaded; skipping cheese output.");
+        var chosen = cheeseRegistry.randomCheese(location);
+        if (chosen == null) {
+            plugin.getLogger().warning("Fermentation finished but no cheese can be produced in " + location.getWorld().getName()
+                    + " at " + location.getBlockX() + ", " + location.getBlockY() + ", " + location.getBlockZ() + "; skipping cheese output.");
         } else {
-            ItemStack cheese = cheeseRegistry.createItem(chosen.get());
+            ItemStack cheese = cheeseRegistry.createItem(chosen);
             var leftovers = inv.addItem(cheese);
             dropLeftovers(leftovers, location);
         }
-
-        location.getWorld().spawnParticle(Particle.LANDING_HONEY, location.clone().add(0.5, 0.25, 0.5), 20, 0.5, 0.5, 0.5, 0.01);
     }
 
     private void dropInventoryContents(CheeseBarrelState state) {
-        Inventory inv = state.getInventory();
-        if (inv == null) {
-            return;
-        }
         Location loc = state.getLocation();
         var world = loc.getWorld();
         if (world == null || !world.isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
             return;
         }
+        Inventory inv = state.getInventory();
+        if (inv == null) {
+            if (state.getSavedItems() == null) {
+                return;
+            }
+            inv = createInventory(loc, state); // Broken before it was ticked since its chunk loaded
+        }
         for (ItemStack content : inv.getContents()) {
             if (content == null || content.getType() == Material.AIR) {
                 continue;
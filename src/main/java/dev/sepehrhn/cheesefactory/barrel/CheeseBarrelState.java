@@ -3,15 +3,32 @@ package dev.sepehrhn.cheesefactory.barrel;
 import org.bukkit.Location;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
 
 public class CheeseBarrelState implements InventoryHolder {
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
     private final Location location;
     private final int[] progressTicks;
+    private final long[] startTimes; // World game time each slot started fermenting (game_time mode)
+    private long nextDeadline = Long.MAX_VALUE;
+    private int fermentingMask; // Bit i set while slot i holds curd
+    private volatile boolean needsSettle = true;
     private Inventory inventory;
+    private BarrelItems savedItems; // Stored contents not yet turned into an inventory
+    int tickIndex = -1; // Position in the owning FermentationTicker group, -1 when not ticking
+    long queuedDeadline = Long.MAX_VALUE; // Deadline currently queued in the ticker, MAX_VALUE when none
+    int progressSlot = -1; // Record in the ProgressStore, -1 when it has none
+    // Bumped on every change worth saving; only touched on the barrel's region thread, like the state itself
+    private int version;
+    private BarrelSnapshot snapshot;
+    private int snapshotVersion;
 
     public CheeseBarrelState(Location location) {
         this.location = location;
         this.progressTicks = new int[27]; // Support up to 27 slots (vanilla barrel size), though we use 9
+        this.startTimes = new long[27];
+        java.util.Arrays.fill(startTimes, NOT_STARTED);
     }
 
     public Location getLocation() {
@@ -24,14 +41,16 @@ public class CheeseBarrelState implements InventoryHolder {
     }
 
     public void resetProgress(int slot) {
-        if (slot >= 0 && slot < progressTicks.length) {
+        if (slot >= 0 && slot < progressTicks.length && progressTicks[slot] != 0) {
             progressTicks[slot] = 0;
+            version++;
         }
     }
 
     public void addProgress(int slot, int amount) {
-        if (slot >= 0 && slot < progressTicks.length) {
+        if (slot >= 0 && slot < progressTicks.length && amount != 0) {
             progressTicks[slot] += amount;
+            version++;
         }
     }
     
@@ -40,6 +59,69 @@ public class CheeseBarrelState implements InventoryHolder {
         return progressTicks;
     }
 
+    public long getStartTime(int slot) {
+        if (slot < 0 || slot >= startTimes.length) return NOT_STARTED;
+        return startTimes[slot];
+    }
+
+    public void setStartTime(int slot, long fullTime) {
+        if (slot >= 0 && slot < startTimes.length && startTimes[slot] != fullTime) {
+            startTimes[slot] = fullTime;
+            version++;
+        }
+    }
+
+    public void clearStartTime(int slot) {
+        setStartTime(slot, NOT_STARTED);
+    }
+
+    public long[] getAllStartTimes() {
+        return startTimes;
+    }
+
+    /**
+     * Earliest world game time at which a slot finishes fermenting, or {@link Long#MAX_VALUE} if nothing is fermenting.
+     */
+    public long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    void setNextDeadline(long nextDeadline) {
+        this.nextDeadline = nextDeadline;
+    }
+
+    public int getFermentingMask() {
+        return fermentingMask;
+    }
+
+    public boolean isFermenting(int slot) {
+        return slot >= 0 && slot < 32 && (fermentingMask & (1 << slot)) != 0;
+    }
+
+    void setFermentingMask(int fermentingMask) {
+        this.fermentingMask = fermentingMask;
+    }
+
+    void clearFermenting(int slot) {
+        fermentingMask &= ~(1 << slot);
+    }
+
+    /**
+     * Whether the contents may have changed since the fermenting slots were last scanned, e.g. a player clicked
+     * in the GUI or the chunk was just loaded.
+     */
+    public boolean needsSettle() {
+        return needsSettle;
+    }
+
+    public void requestSettle() {
+        this.needsSettle = true;
+    }
+
+    void clearSettleRequest() {
+        this.needsSettle = false;
+    }
+
     void setInventory(Inventory inventory) {
         this.inventory = inventory;
     }
@@ -48,13 +130,62 @@ public class CheeseBarrelState implements InventoryHolder {
     public Inventory getInventory() {
         return inventory;
     }
-    private org.bukkit.inventory.ItemStack[] savedItems;
 
-    public void setSavedItems(org.bukkit.inventory.ItemStack[] items) {
+    void setSavedItems(BarrelItems items) {
         this.savedItems = items;
     }
 
-    public org.bukkit.inventory.ItemStack[] getSavedItems() {
+    BarrelItems getSavedItems() {
         return savedItems;
     }
+
+    /**
+     * Records that the inventory changed, or is about to change within the current event.
+     */
+    void markChanged() {
+        version++;
+    }
+
+    /**
+     * Packs the inventory into bytes and releases it while the barrel's chunk is unloaded. Must be called on the
+     * barrel's region thread.
+     */
+    void evictInventory() {
+        if (inventory == null) {
+            return;
+        }
+        BarrelSnapshot current = currentSnapshot();
+        // Contents saved since the last change are already serialized, or will be once storage writes them
+        savedItems = current != null && current.items() != null ? current.items().compact() : BarrelItems.encode(inventory.getContents());
+        inventory = null;
+    }
+
+    /**
+     * An immutable copy of the persistent state of this barrel. The previous snapshot is returned as long as
+     * nothing changed since it was taken. Must be called on the barrel's region thread, or while its chunk is
+     * unloaded.
+     */
+    BarrelSnapshot snapshot() {
+        BarrelSnapshot current = currentSnapshot();
+        if (current != null) {
+            return current;
+        }
+        BarrelItems items = savedItems;
+        if (inventory != null) {
+            ItemStack[] contents = inventory.getContents();
+            ItemStack[] copy = new ItemStack[contents.length];
+            for (int i = 0; i < contents.length; i++) {
+                // Inventory contents are live mirrors of the container's stacks
+                copy[i] = contents[i] == null ? null : contents[i].clone();
+            }
+            items = BarrelItems.ofStacks(copy);
+        }
+        snapshot = new BarrelSnapshot(BarrelKey.of(location), progressTicks.clone(), startTimes.clone(), items);
+        snapshotVersion = version;
+        return snapshot;
+    }
+
+    private BarrelSnapshot currentSnapshot() {
+        return snapshot != null && snapshotVersion == version ? snapshot : null;
+    }
 }
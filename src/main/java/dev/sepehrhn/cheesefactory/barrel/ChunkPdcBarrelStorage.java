@@ -0,0 +1,358 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each chunk's barrels in that chunk's persistent data container, encoded with {@link BarrelCodec}.
+ * <p>
+ * The data loads and saves with the chunk through the server's own chunk I/O and travels with world copies and
+ * backups. Snapshots are written into the container right away on the chunk's region thread, so there is
+ * nothing for this backend to write on autosave; the server persists the chunk on its next save or unload.
+ * <p>
+ * Chunk data is only touched on the chunk's own region thread. Changes coming from elsewhere, e.g. autosave
+ * copying barrels of unloaded chunks, are queued per chunk and applied on that thread.
+ * <p>
+ * Barrels still in region files, from {@link RegionFileBarrelStorage} or the older global files it migrates,
+ * are moved into chunk data the first time their chunk loads. Changes for chunks that are not loaded when the
+ * plugin shuts down go the same way: saves are written to the region files and removals to a small file of
+ * their own, and both are applied to the chunk when it next loads.
+ */
+public class ChunkPdcBarrelStorage implements BarrelStorage {
+
+    private final Plugin plugin;
+    private final NamespacedKey dataKey;
+    private final RegionFileBarrelStorage legacy;
+    private final Map<ChunkKey, Map<BarrelKey, BarrelSnapshot>> loaded = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> legacyWorlds = new ConcurrentHashMap<>();
+    // Changes that came in off the chunk's region thread, applied there; the inner collections are only
+    // changed inside compute calls and read once removed
+    private final Map<ChunkKey, Map<BarrelKey, BarrelSnapshot>> pendingPuts = new ConcurrentHashMap<>();
+    private final Map<ChunkKey, Set<BarrelKey>> pendingRemovals = new ConcurrentHashMap<>();
+    private final File pendingRemovalsFile;
+
+    public ChunkPdcBarrelStorage(Plugin plugin, NamespacedKey dataKey) {
+        this.plugin = plugin;
+        this.dataKey = dataKey;
+        this.legacy = new RegionFileBarrelStorage(plugin.getDataFolder(), plugin.getLogger());
+        this.pendingRemovalsFile = new File(plugin.getDataFolder(), "barrels.pending-removals");
+    }
+
+    @Override
+    public void open() {
+        legacy.open();
+        readPendingRemovals();
+    }
+
+    @Override
+    public CompletableFuture<List<BarrelSnapshot>> loadChunk(World world, int chunkX, int chunkZ) {
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        Map<BarrelKey, BarrelSnapshot> barrels = barrelsOf(chunk);
+        Set<BarrelKey> removed = applyPending(chunk, barrels);
+        Map<BarrelKey, BarrelSnapshot> stored = new HashMap<>(barrels);
+        if (!legacyWorlds.computeIfAbsent(world.getName(), legacy::hasRegions)) {
+            return CompletableFuture.completedFuture(new ArrayList<>(stored.values()));
+        }
+        return legacy.loadChunk(world, chunkX, chunkZ).thenApply(found -> {
+            if (found.isEmpty()) {
+                return new ArrayList<>(stored.values());
+            }
+            Bukkit.getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> migrate(world, chunkX, chunkZ, found, stored, removed));
+            // Region files only hold barrels saved after the chunk data was, so their copy wins
+            Map<BarrelKey, BarrelSnapshot> merged = new HashMap<>(stored);
+            for (BarrelSnapshot snapshot : found) {
+                if (!removed.contains(snapshot.key())) {
+                    merged.put(snapshot.key(), snapshot);
+                }
+            }
+            return new ArrayList<>(merged.values());
+        });
+    }
+
+    @Override
+    public void put(BarrelSnapshot snapshot) {
+        BarrelKey key = snapshot.key();
+        ChunkKey chunkKey = chunkOf(key);
+        // A change made here is newer than one still queued for the same barrel
+        forgetPendingRemoval(chunkKey, key);
+        Chunk chunk = ownedChunk(key);
+        if (chunk == null) {
+            pendingPuts.compute(chunkKey, (k, puts) -> {
+                puts = puts == null ? new HashMap<>() : puts;
+                puts.put(key, snapshot);
+                return puts;
+            });
+            applyLater(key);
+            return;
+        }
+        forgetPendingPut(chunkKey, key);
+        Map<BarrelKey, BarrelSnapshot> barrels = barrelsOf(chunk);
+        barrels.put(key, snapshot);
+        write(chunk, barrels);
+    }
+
+    @Override
+    public void remove(BarrelKey key) {
+        legacy.remove(key);
+        ChunkKey chunkKey = chunkOf(key);
+        forgetPendingPut(chunkKey, key);
+        Chunk chunk = ownedChunk(key);
+        if (chunk == null) {
+            pendingRemovals.compute(chunkKey, (k, removals) -> {
+                removals = removals == null ? new HashSet<>() : removals;
+                removals.add(key);
+                return removals;
+            });
+            applyLater(key);
+            return;
+        }
+        forgetPendingRemoval(chunkKey, key);
+        Map<BarrelKey, BarrelSnapshot> barrels = barrelsOf(chunk);
+        if (barrels.remove(key) != null) {
+            write(chunk, barrels);
+        }
+    }
+
+    @Override
+    public void unloadChunk(World world, int chunkX, int chunkZ) {
+        loaded.remove(new ChunkKey(world.getName(), BarrelRegistry.chunkKey(chunkX, chunkZ)));
+        legacy.unloadChunk(world, chunkX, chunkZ);
+    }
+
+    @Override
+    public void unloadWorld(String world) {
+        loaded.keySet().removeIf(key -> key.world().equals(world));
+        legacyWorlds.remove(world);
+        legacy.unloadWorld(world);
+    }
+
+    /**
+     * Chunk data is saved by the server; only region files still being migrated need writing.
+     */
+    @Override
+    public CompletableFuture<Void> saveAsync() {
+        return legacy.saveAsync();
+    }
+
+    /**
+     * Writes changes for chunks that are not loaded to the region files and the pending removals file, so they
+     * reach the chunk when it next loads.
+     */
+    @Override
+    public void close() {
+        for (Map<BarrelKey, BarrelSnapshot> puts : pendingPuts.values()) {
+            puts.values().forEach(legacy::put);
+        }
+        pendingPuts.clear();
+        legacy.close();
+        writePendingRemovals();
+    }
+
+    /**
+     * Copies barrels found in region files into the chunk and drops them from the region files, which shrink
+     * and are deleted as they empty.
+     *
+     * @param stored  the chunk's barrels when the region files were read
+     * @param removed barrels removed while the chunk was not loaded, which must not come back
+     */
+    private void migrate(World world, int chunkX, int chunkZ, List<BarrelSnapshot> found,
+                         Map<BarrelKey, BarrelSnapshot> stored, Set<BarrelKey> removed) {
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            return; // Still in the region files; tried again when the chunk next loads
+        }
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        Map<BarrelKey, BarrelSnapshot> barrels = barrelsOf(chunk);
+        for (BarrelSnapshot snapshot : found) {
+            BarrelKey key = snapshot.key();
+            // A barrel saved into the chunk meanwhile is newer than the region file
+            if (!removed.contains(key) && barrels.get(key) == stored.get(key)) {
+                barrels.put(key, snapshot);
+            }
+            legacy.remove(key);
+        }
+        write(chunk, barrels);
+    }
+
+    private void readPendingRemovals() {
+        if (!pendingRemovalsFile.exists()) {
+            return;
+        }
+        int read = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(pendingRemovalsFile)))) {
+            int count = BarrelCodec.readVarInt(in);
+            for (; read < count; read++) {
+                BarrelKey key = BarrelCodec.readKey(in);
+                pendingRemovals.computeIfAbsent(chunkOf(key), k -> new HashSet<>()).add(key);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to read " + pendingRemovalsFile.getName() + " (" + read
+                    + " removals read); removed barrels in chunks that were not loaded may come back: " + e.getMessage());
+        }
+    }
+
+    private void writePendingRemovals() {
+        if (pendingRemovals.isEmpty()) {
+            if (pendingRemovalsFile.exists() && !pendingRemovalsFile.delete()) {
+                plugin.getLogger().warning("Failed to delete " + pendingRemovalsFile.getPath());
+            }
+            return;
+        }
+        List<BarrelKey> keys = new ArrayList<>();
+        pendingRemovals.values().forEach(keys::addAll);
+        File temp = new File(pendingRemovalsFile.getParentFile(), pendingRemovalsFile.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                BarrelCodec.writeVarInt(out, keys.size());
+                for (BarrelKey key : keys) {
+                    BarrelCodec.writeKey(out, key);
+                }
+            }
+            Files.move(temp.toPath(), pendingRemovalsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save " + keys.size() + " barrel removals for unloaded chunks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the changes queued for a chunk and writes it if any of them changed its barrels. Must be called on
+     * the chunk's region thread.
+     *
+     * @return the barrels removed while queued
+     */
+    private Set<BarrelKey> applyPending(Chunk chunk, Map<BarrelKey, BarrelSnapshot> barrels) {
+        ChunkKey key = new ChunkKey(chunk.getWorld().getName(), BarrelRegistry.chunkKey(chunk.getX(), chunk.getZ()));
+        Map<BarrelKey, BarrelSnapshot> puts = pendingPuts.remove(key);
+        Set<BarrelKey> removals = pendingRemovals.remove(key);
+        boolean changed = false;
+        if (puts != null) {
+            barrels.putAll(puts);
+            changed = true;
+        }
+        if (removals == null) {
+            removals = Set.of();
+        }
+        for (BarrelKey removal : removals) {
+            changed |= barrels.remove(removal) != null;
+        }
+        if (changed) {
+            write(chunk, barrels);
+        }
+        return removals;
+    }
+
+    /**
+     * Queues a task on the barrel's region that applies the changes queued for its chunk, if the chunk is loaded.
+     * Otherwise they wait for the chunk to load, or are written to fallback storage on close.
+     */
+    private void applyLater(BarrelKey key) {
+        World world = Bukkit.getWorld(key.world());
+        int chunkX = key.x() >> 4;
+        int chunkZ = key.z() >> 4;
+        if (world == null || !world.isChunkLoaded(chunkX, chunkZ)) {
+            return;
+        }
+        Bukkit.getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> {
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+                applyPending(chunk, barrelsOf(chunk));
+            }
+        });
+    }
+
+    private void forgetPendingPut(ChunkKey chunkKey, BarrelKey key) {
+        pendingPuts.computeIfPresent(chunkKey, (k, puts) -> {
+            puts.remove(key);
+            return puts.isEmpty() ? null : puts;
+        });
+    }
+
+    private void forgetPendingRemoval(ChunkKey chunkKey, BarrelKey key) {
+        pendingRemovals.computeIfPresent(chunkKey, (k, removals) -> {
+            removals.remove(key);
+            return removals.isEmpty() ? null : removals;
+        });
+    }
+
+    private Map<BarrelKey, BarrelSnapshot> barrelsOf(Chunk chunk) {
+        ChunkKey key = new ChunkKey(chunk.getWorld().getName(), BarrelRegistry.chunkKey(chunk.getX(), chunk.getZ()));
+        return loaded.computeIfAbsent(key, k -> read(chunk));
+    }
+
+    private Map<BarrelKey, BarrelSnapshot> read(Chunk chunk) {
+        Map<BarrelKey, BarrelSnapshot> barrels = new ConcurrentHashMap<>();
+        byte[] data = chunk.getPersistentDataContainer().get(dataKey, PersistentDataType.BYTE_ARRAY);
+        if (data == null) {
+            return barrels;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            BarrelCodec.read(in, snapshot -> barrels.put(snapshot.key(), snapshot));
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to read cheese barrels of chunk " + chunk.getX() + "," + chunk.getZ()
+                    + " in " + chunk.getWorld().getName() + " (" + barrels.size() + " read): " + e.getMessage());
+        }
+        return barrels;
+    }
+
+    private void write(Chunk chunk, Map<BarrelKey, BarrelSnapshot> barrels) {
+        PersistentDataContainer pdc = chunk.getPersistentDataContainer();
+        if (barrels.isEmpty()) {
+            pdc.remove(dataKey);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BarrelCodec.write(out, new ArrayList<>(barrels.values()));
+        } catch (IOException e) {
+            plugin.getLogger().severe("Failed to save cheese barrels of chunk " + chunk.getX() + "," + chunk.getZ()
+                    + " in " + chunk.getWorld().getName() + ": " + e.getMessage());
+            return;
+        }
+        pdc.set(dataKey, PersistentDataType.BYTE_ARRAY, bytes.toByteArray());
+    }
+
+    /**
+     * @return the barrel's chunk if it is loaded and owned by the calling thread, otherwise null
+     */
+    private static Chunk ownedChunk(BarrelKey key) {
+        World world = Bukkit.getWorld(key.world());
+        int chunkX = key.x() >> 4;
+        int chunkZ = key.z() >> 4;
+        if (world == null || !Bukkit.isOwnedByCurrentRegion(world, chunkX, chunkZ) || !world.isChunkLoaded(chunkX, chunkZ)) {
+            return null;
+        }
+        return world.getChunkAt(chunkX, chunkZ);
+    }
+
+    private static ChunkKey chunkOf(BarrelKey key) {
+        return new ChunkKey(key.world(), BarrelRegistry.chunkKey(key.x() >> 4, key.z() >> 4));
+    }
+
+    private record ChunkKey(String world, long chunk) {
+    }
+}
@@ -0,0 +1,153 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import dev.sepehrhn.cheesefactory.item.CheeseKeys;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends fermentation particles and sounds to the players who can actually see them instead of broadcasting
+ * them to the whole world.
+ * <p>
+ * A barrel only does effect work when somebody is watching its chunk. Each watcher must then be within the
+ * configured radius, must not have hidden effects with {@code /cf effects}, and must have particle budget left
+ * for the current second. Settings come from the caller's {@link BarrelSettings} so one call never mixes
+ * values from before and after a reload.
+ */
+public class FermentationEffects {
+
+    private static final long BUDGET_WINDOW_NANOS = 1_000_000_000L;
+    private static final int COMPLETION_PARTICLES = 20;
+
+    private final NamespacedKey hiddenKey;
+    private final Map<UUID, ParticleBudget> budgets = new ConcurrentHashMap<>();
+
+    public FermentationEffects(CheeseKeys keys) {
+        this.hiddenKey = keys.effectsHidden();
+    }
+
+    /**
+     * Plays the periodic fermenting particles and, by chance, the fermenting sound above a barrel.
+     */
+    public void playFermenting(BarrelSettings.Effects settings, World world, int x, int y, int z) {
+        if (!settings.particlesEnabled() && !settings.soundsEnabled()) {
+            return;
+        }
+        Collection<Player> viewers = world.getPlayersSeeingChunk(x >> 4, z >> 4);
+        if (viewers.isEmpty()) {
+            return;
+        }
+        double cx = x + 0.5;
+        double cz = z + 0.5;
+        boolean playSound = settings.soundsEnabled() && ThreadLocalRandom.current().nextDouble() < settings.soundChance();
+        for (Player player : viewers) {
+            if (!isInRange(settings, player, cx, y + 0.5, cz)) {
+                continue;
+            }
+            if (settings.particlesEnabled() && takeBudget(settings, player, settings.particleCount())) {
+                spawnIndicator(settings, player, cx, y + settings.particleOffsetY(), cz);
+            }
+            if (playSound) {
+                player.playSound(settings.sound(), cx, y + 0.5, cz);
+            }
+        }
+    }
+
+    /**
+     * Plays the burst shown when a barrel hands out cheese.
+     */
+    public void playCompletion(BarrelSettings.Effects settings, World world, int x, int y, int z) {
+        Collection<Player> viewers = world.getPlayersSeeingChunk(x >> 4, z >> 4);
+        if (viewers.isEmpty()) {
+            return;
+        }
+        double cx = x + 0.5;
+        double cz = z + 0.5;
+        for (Player player : viewers) {
+            if (isInRange(settings, player, cx, y + 0.25, cz) && takeBudget(settings, player, COMPLETION_PARTICLES)) {
+                player.spawnParticle(Particle.LANDING_HONEY, cx, y + 0.25, cz, COMPLETION_PARTICLES, 0.5, 0.5, 0.5, 0.01);
+            }
+        }
+    }
+
+    /**
+     * Flips whether fermentation effects are hidden for a player. The choice is stored on the player.
+     *
+     * @return true if effects are now shown to the player
+     */
+    public boolean toggle(Player player) {
+        var pdc = player.getPersistentDataContainer();
+        if (pdc.has(hiddenKey, PersistentDataType.BYTE)) {
+            pdc.remove(hiddenKey);
+            return true;
+        }
+        pdc.set(hiddenKey, PersistentDataType.BYTE, (byte) 1);
+        return false;
+    }
+
+    public void forget(Player player) {
+        budgets.remove(player.getUniqueId());
+    }
+
+    private void spawnIndicator(BarrelSettings.Effects settings, Player player, double x, double y, double z) {
+        int particleCount = settings.particleCount();
+        if (settings.particleType() == Particle.DUST) {
+            Particle.DustOptions[] dustOptions = settings.dustOptions();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < particleCount; i++) {
+                Particle.DustOptions dust = dustOptions[random.nextInt(dustOptions.length)];
+                // Spread slightly
+                double offsetX = (random.nextDouble() - 0.5) * 0.5;
+                double offsetZ = (random.nextDouble() - 0.5) * 0.5;
+                player.spawnParticle(Particle.DUST, x + offsetX, y, z + offsetZ, 1, dust);
+            }
+        } else {
+            player.spawnParticle(settings.particleType(), x, y, z, particleCount, 0.3, 0.2, 0.3, 0.1);
+        }
+    }
+
+    private boolean isInRange(BarrelSettings.Effects settings, Player player, double x, double y, double z) {
+        if (player.getPersistentDataContainer().has(hiddenKey, PersistentDataType.BYTE)) {
+            return false;
+        }
+        var loc = player.getLocation();
+        double dx = loc.getX() - x;
+        double dy = loc.getY() - y;
+        double dz = loc.getZ() - z;
+        return dx * dx + dy * dy + dz * dz <= settings.radiusSquared();
+    }
+
+    private boolean takeBudget(BarrelSettings.Effects settings, Player player, int particles) {
+        int limit = settings.particlesPerSecond();
+        if (limit == 0) {
+            return true;
+        }
+        return budgets.computeIfAbsent(player.getUniqueId(), id -> new ParticleBudget()).take(particles, limit);
+    }
+
+    private static final class ParticleBudget {
+        private long windowStart;
+        private int used;
+
+        private synchronized boolean take(int particles, int limit) {
+            long now = System.nanoTime();
+            if (now - windowStart >= BUDGET_WINDOW_NANOS) {
+                windowStart = now;
+                used = 0;
+            }
+            if (used + particles > limit) {
+                return false;
+            }
+            used += particles;
+            return true;
+        }
+    }
+}
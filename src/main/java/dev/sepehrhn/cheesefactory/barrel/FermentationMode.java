@@ -0,0 +1,26 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import java.util.Locale;
+
+public enum FermentationMode {
+    /**
+     * Progress only advances while the barrel's chunk is loaded; it is frozen into a counter when the chunk unloads.
+     */
+    TICKING,
+    /**
+     * Each slot remembers the world time it started fermenting; progress is computed on demand
+     * and finished cheese is handed out in one catch-up pass, including time spent unloaded.
+     */
+    GAME_TIME;
+
+    public static FermentationMode parse(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return valueOf(raw.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
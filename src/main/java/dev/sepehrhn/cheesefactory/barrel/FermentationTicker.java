@@ -0,0 +1,325 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Drives fermentation with one repeating region task per chunk group instead of one task per barrel.
+ * Each group owns a compact array of barrels and walks it in a single pass every interval.
+ * <p>
+ * Completions do not depend on that pass. Each group also keeps a priority queue of barrel deadlines in world
+ * game time and a single delayed task armed for the earliest one, so cheese is produced exactly when it is due
+ * and the cost of fermentation scales with completions rather than with barrels times passes.
+ * <p>
+ * Work is spread out and bounded: group tasks start on staggered phases of the interval so they do not all fire
+ * on the same tick, and each run stops after a configurable time budget, carrying the rest of its round-robin
+ * pass (or remaining due deadlines) over to the next tick. When the server's average MSPT climbs, effects are
+ * throttled first and then passes are skipped; since progress follows world game time nothing is lost.
+ * <p>
+ * Groups are 16x16 chunks, which matches the smallest section Folia will hand to a region thread,
+ * so every barrel in a group is always owned by the thread running that group's task. All group
+ * mutations are funnelled onto that thread, which keeps the member arrays lock-free.
+ */
+public class FermentationTicker {
+
+    private static final int GROUP_SHIFT = 4;
+
+    private final Plugin plugin;
+    private final Consumer<CheeseBarrelState> action;
+    private final Consumer<CheeseBarrelState> onDeadline;
+    private final Map<GroupKey, TickGroup> groups = new ConcurrentHashMap<>();
+    private volatile int interval;
+    private volatile BarrelSettings.Scheduler limits = BarrelSettings.Scheduler.DEFAULTS;
+    private volatile long loadSampledAt;
+    private volatile double averageMspt;
+
+    public FermentationTicker(Plugin plugin, Consumer<CheeseBarrelState> action, Consumer<CheeseBarrelState> onDeadline, int interval) {
+        this.plugin = plugin;
+        this.action = action;
+        this.onDeadline = onDeadline;
+        this.interval = Math.max(1, interval);
+    }
+
+    public void add(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        runOnOwner(loc, () -> groups.computeIfAbsent(keyOf(loc), key -> new TickGroup(loc)).add(state));
+    }
+
+    public void remove(CheeseBarrelState state) {
+        Location loc = state.getLocation();
+        runOnOwner(loc, () -> {
+            GroupKey key = keyOf(loc);
+            TickGroup group = groups.get(key);
+            state.queuedDeadline = Long.MAX_VALUE;
+            if (group != null && group.remove(state) && group.size == 0) {
+                group.cancel();
+                group.cancelDeadlines();
+                groups.remove(key, group);
+            }
+        });
+    }
+
+    /**
+     * Queues the barrel's next completion at the given world game time, replacing any earlier entry for it.
+     * Must be called on the barrel's region thread while it is in the ticker; {@link Long#MAX_VALUE} clears it.
+     */
+    public void schedule(CheeseBarrelState state, long due) {
+        if (due == Long.MAX_VALUE) {
+            state.queuedDeadline = Long.MAX_VALUE;
+            return;
+        }
+        if (state.queuedDeadline == due || state.tickIndex < 0) {
+            return;
+        }
+        TickGroup group = groups.get(keyOf(state.getLocation()));
+        if (group != null) {
+            state.queuedDeadline = due;
+            group.schedule(state, due);
+        }
+    }
+
+    /**
+     * Changes the period of every group. Groups keep their members; only their tasks are restarted.
+     */
+    public void setInterval(int interval) {
+        int sanitized = Math.max(1, interval);
+        if (sanitized == this.interval) {
+            return;
+        }
+        this.interval = sanitized;
+        for (TickGroup group : groups.values()) {
+            group.restart();
+        }
+    }
+
+    public void setLimits(BarrelSettings.Scheduler limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Whether effects should be skipped because the server is running behind.
+     */
+    public boolean isEffectsThrottled() {
+        return averageMspt() > limits.effectsMspt();
+    }
+
+    /**
+     * How many scheduled runs make up one pass: 1 normally, 2 when over the slowdown threshold and 4 when
+     * well past it.
+     */
+    private int passStride() {
+        double mspt = averageMspt();
+        double slowdownMspt = limits.slowdownMspt();
+        if (mspt <= slowdownMspt) {
+            return 1;
+        }
+        return mspt > slowdownMspt * 1.5 ? 4 : 2;
+    }
+
+    private double averageMspt() {
+        long now = System.nanoTime();
+        if (now - loadSampledAt > 1_000_000_000L) {
+            loadSampledAt = now;
+            try {
+                averageMspt = Bukkit.getServer().getAverageTickTime();
+            } catch (UnsupportedOperationException e) {
+                // Folia has no server-wide tick time; rely on the per-run budget alone there
+                averageMspt = 0;
+            }
+        }
+        return averageMspt;
+    }
+
+    public int groupCount() {
+        return groups.size();
+    }
+
+    public void shutdown() {
+        for (TickGroup group : groups.values()) {
+            group.cancel();
+            group.cancelDeadlines();
+        }
+        groups.clear();
+    }
+
+    private void runOnOwner(Location loc, Runnable runnable) {
+        if (Bukkit.isOwnedByCurrentRegion(loc)) {
+            runnable.run();
+        } else {
+            Bukkit.getRegionScheduler().execute(plugin, loc, runnable);
+        }
+    }
+
+    private static GroupKey keyOf(Location loc) {
+        return new GroupKey(loc.getWorld().getUID(), loc.getBlockX() >> 4 >> GROUP_SHIFT, loc.getBlockZ() >> 4 >> GROUP_SHIFT);
+    }
+
+    private record GroupKey(UUID world, int groupX, int groupZ) {
+    }
+
+    private record Deadline(long due, CheeseBarrelState state) {
+    }
+
+    private final class TickGroup {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private CheeseBarrelState[] members = new CheeseBarrelState[8];
+        private int size;
+        private volatile ScheduledTask task;
+        private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>(Comparator.comparingLong(Deadline::due));
+        private ScheduledTask deadlineTask;
+        private long armedFor = Long.MAX_VALUE;
+        private ScheduledTask continuation;
+        private int cursor = -1; // Next member to visit in the current pass, -1 between passes
+        private int skippedRuns;
+
+        private TickGroup(Location anchor) {
+            this.world = anchor.getWorld();
+            this.chunkX = anchor.getBlockX() >> 4;
+            this.chunkZ = anchor.getBlockZ() >> 4;
+            start();
+        }
+
+        private void add(CheeseBarrelState state) {
+            if (state.tickIndex >= 0) {
+                return;
+            }
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size] = state;
+            state.tickIndex = size++;
+        }
+
+        private boolean remove(CheeseBarrelState state) {
+            int index = state.tickIndex;
+            if (index < 0 || index >= size || members[index] != state) {
+                return false;
+            }
+            CheeseBarrelState last = members[--size];
+            members[index] = last;
+            last.tickIndex = index;
+            members[size] = null;
+            state.tickIndex = -1;
+            return true;
+        }
+
+        private void run() {
+            if (cursor < 0) {
+                if (++skippedRuns < passStride()) {
+                    return;
+                }
+                skippedRuns = 0;
+                cursor = size - 1;
+            }
+            drain();
+        }
+
+        private void drain() {
+            long budgetEnd = System.nanoTime() + limits.budgetNanos();
+            // Walk backwards so a barrel removing itself only swaps in an entry we already visited.
+            while (cursor >= 0) {
+                if (cursor < size) {
+                    action.accept(members[cursor]);
+                }
+                cursor--;
+                if (cursor >= 0 && System.nanoTime() >= budgetEnd) {
+                    continueNextTick();
+                    return;
+                }
+            }
+        }
+
+        private void continueNextTick() {
+            if (continuation == null) {
+                continuation = Bukkit.getRegionScheduler().runDelayed(plugin, world, chunkX, chunkZ, scheduledTask -> {
+                    continuation = null;
+                    drain();
+                }, 1);
+            }
+        }
+
+        private void schedule(CheeseBarrelState state, long due) {
+            deadlines.add(new Deadline(due, state));
+            if (due < armedFor) {
+                arm(due);
+            }
+        }
+
+        private void arm(long due) {
+            if (deadlineTask != null) {
+                deadlineTask.cancel();
+            }
+            long delay = Math.max(1, due - world.getGameTime());
+            armedFor = due;
+            deadlineTask = Bukkit.getRegionScheduler().runDelayed(plugin, world, chunkX, chunkZ, scheduledTask -> fireDeadlines(), delay);
+        }
+
+        private void fireDeadlines() {
+            deadlineTask = null;
+            armedFor = Long.MAX_VALUE;
+            long now = world.getGameTime();
+            long budgetEnd = System.nanoTime() + limits.budgetNanos();
+            Deadline next;
+            // Anything still due once the budget runs out stays queued and re-arms for the next tick
+            while ((next = deadlines.peek()) != null && next.due() <= now && System.nanoTime() < budgetEnd) {
+                deadlines.poll();
+                CheeseBarrelState state = next.state();
+                // Entries are replaced lazily; skip ones superseded by a newer deadline or left behind by removal
+                if (state.queuedDeadline == next.due() && state.tickIndex >= 0 && state.tickIndex < size && members[state.tickIndex] == state) {
+                    state.queuedDeadline = Long.MAX_VALUE;
+                    onDeadline.accept(state);
+                }
+            }
+            next = deadlines.peek();
+            if (next != null && next.due() < armedFor) {
+                arm(next.due());
+            }
+        }
+
+        private void start() {
+            int period = interval;
+            // Stagger groups across the interval so they do not all fire on the same tick
+            int phase = Math.floorMod(31 * chunkX + chunkZ, period);
+            task = Bukkit.getRegionScheduler().runAtFixedRate(plugin, world, chunkX, chunkZ, scheduledTask -> run(), 1 + phase, period);
+        }
+
+        private void restart() {
+            cancel();
+            start();
+        }
+
+        private void cancel() {
+            ScheduledTask current = task;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        private void cancelDeadlines() {
+            if (deadlineTask != null) {
+                deadlineTask.cancel();
+                deadlineTask = null;
+            }
+            if (continuation != null) {
+                continuation.cancel();
+                continuation = null;
+            }
+            cursor = -1;
+            armedFor = Long.MAX_VALUE;
+            deadlines.clear();
+        }
+    }
+}
@@ -0,0 +1,624 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Records every barrel change as an entry appended to a journal, so a save costs as much as what changed rather
+ * than the whole barrel set.
+ * <p>
+ * The journal lives next to a full snapshot in {@code journal/}. Startup reads the snapshot and replays the
+ * journal on top of it. Changes are appended by the storage thread as they come in and synced to disk in one
+ * batch every second and on each save; once the journal outgrows the snapshot, the storage thread folds it into
+ * a new snapshot and starts an empty journal. Every entry carries a checksum, so a journal torn by a crash is
+ * replayed up to the last complete entry.
+ * <p>
+ * The snapshot and the journal both carry a generation number, bumped by every compaction. A journal is only
+ * replayed onto the snapshot of its own generation, so a crash between writing a snapshot and emptying the
+ * journal cannot replay older entries over the newer snapshot.
+ * <p>
+ * Barrels of loaded worlds are kept in memory, indexed by chunk. When a world unloads its barrels are dropped
+ * from memory and read back from the snapshot and journal when it loads again; compaction reads them from there
+ * as well.
+ */
+public class JournalBarrelStorage implements BarrelStorage {
+
+    private static final int MAGIC = 0x43464A4C; // "CFJL"
+    private static final int SNAPSHOT_MAGIC = 0x43464A53; // "CFJS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 13; // magic, version, generation
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final long MIN_COMPACT_BYTES = 1L << 20;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    // Written once barrels from region files are imported, so they are imported exactly once
+    private final File importMarker;
+    private final RegionFileBarrelStorage legacy;
+    private final Logger logger;
+    private final Map<ChunkKey, Map<BarrelKey, BarrelSnapshot>> byChunk = new ConcurrentHashMap<>();
+    // Worlds whose barrels are only on disk; changed on the storage thread, under worldLock
+    private final Set<String> unloadedWorlds = ConcurrentHashMap.newKeySet();
+    private final Object worldLock = new Object();
+    private final Queue<Entry> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean appendQueued = new AtomicBoolean();
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CheeseFactory Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only touched on the storage thread once open() returned
+    private FileChannel journal;
+    private long generation;
+    private long snapshotBytes;
+    private boolean unsynced;
+
+    public JournalBarrelStorage(File dataFolder, Logger logger) {
+        File directory = new File(dataFolder, "journal");
+        this.snapshotFile = new File(directory, "barrels.snapshot");
+        this.journalFile = new File(directory, "barrels.journal");
+        this.importMarker = new File(directory, "imported");
+        this.legacy = new RegionFileBarrelStorage(dataFolder, logger);
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the snapshot and replays the journal on the calling thread. Until every region file was imported,
+     * barrels from region files (and the older global files they are migrated from) fill in positions the
+     * journal has nothing for.
+     */
+    @Override
+    public void open() {
+        File directory = snapshotFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.severe("Failed to create " + directory.getPath());
+        }
+        if (snapshotFile.exists()) {
+            readSnapshot();
+        }
+        long replayed = replay();
+        try {
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (journal.size() < HEADER_BYTES) {
+                resetJournal();
+            }
+            journal.position(journal.size());
+        } catch (IOException e) {
+            logger.severe("Failed to open " + journalFile.getName() + "; barrel changes will not be saved: " + e.getMessage());
+            journal = null;
+        }
+        if (replayed > 0) {
+            logger.info("Replayed " + replayed + " barrel journal entries.");
+        }
+        if (!importMarker.exists()) {
+            importLegacy();
+        }
+        // Barrels of worlds that are not loaded yet stay on disk until they are
+        for (ChunkKey key : byChunk.keySet()) {
+            if (Bukkit.getWorld(key.world()) == null) {
+                unloadedWorlds.add(key.world());
+            }
+        }
+        byChunk.keySet().removeIf(key -> unloadedWorlds.contains(key.world()));
+        io.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Answers from memory, first reading the world back from disk on the storage thread if it was unloaded.
+     */
+    @Override
+    public CompletableFuture<List<BarrelSnapshot>> loadChunk(World world, int chunkX, int chunkZ) {
+        String name = world.getName();
+        ChunkKey key = new ChunkKey(name, BarrelRegistry.chunkKey(chunkX, chunkZ));
+        if (unloadedWorlds.contains(name)) {
+            try {
+                return CompletableFuture.runAsync(() -> loadWorld(name), io).thenApply(ignored -> barrelsIn(key));
+            } catch (RejectedExecutionException e) {
+                return CompletableFuture.completedFuture(List.of()); // Shutting down
+            }
+        }
+        return CompletableFuture.completedFuture(barrelsIn(key));
+    }
+
+    @Override
+    public void put(BarrelSnapshot snapshot) {
+        Entry entry = new Entry(UPSERT, snapshot.key(), snapshot);
+        if (!enqueueIfUnloaded(entry)) {
+            apply(snapshot);
+            enqueue(entry);
+        }
+    }
+
+    @Override
+    public void remove(BarrelKey key) {
+        Entry entry = new Entry(REMOVE, key, null);
+        if (enqueueIfUnloaded(entry)) {
+            return;
+        }
+        Map<BarrelKey, BarrelSnapshot> barrels = byChunk.get(chunkOf(key));
+        if (barrels != null && barrels.remove(key) != null) {
+            enqueue(entry);
+        }
+    }
+
+    /**
+     * Drops the world's barrels from memory on the storage thread, after the changes it saved before unloading
+     * were queued. They are read back when one of its chunks loads again.
+     */
+    @Override
+    public void unloadWorld(String world) {
+        try {
+            io.execute(() -> {
+                synchronized (worldLock) {
+                    unloadedWorlds.add(world);
+                    byChunk.keySet().removeIf(key -> key.world().equals(world));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; nothing left to release
+        }
+    }
+
+    /**
+     * Appends anything still queued and syncs the journal on the storage thread, compacting if it has grown
+     * enough.
+     */
+    @Override
+    public CompletableFuture<Void> saveAsync() {
+        return CompletableFuture.runAsync(() -> {
+            append();
+            sync();
+            compactIfLarge();
+        }, io);
+    }
+
+    /**
+     * Appends what is left and folds the journal into the snapshot, so the next startup has nothing to replay.
+     */
+    @Override
+    public void close() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for pending barrel storage work; saving again now.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        append();
+        sync();
+        compact();
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to close " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void apply(BarrelSnapshot snapshot) {
+        byChunk.computeIfAbsent(chunkOf(snapshot.key()), chunk -> new ConcurrentHashMap<>()).put(snapshot.key(), snapshot);
+    }
+
+    private void forget(BarrelKey key) {
+        Map<BarrelKey, BarrelSnapshot> barrels = byChunk.get(chunkOf(key));
+        if (barrels != null) {
+            barrels.remove(key);
+        }
+    }
+
+    private List<BarrelSnapshot> barrelsIn(ChunkKey key) {
+        Map<BarrelKey, BarrelSnapshot> barrels = byChunk.get(key);
+        return barrels == null ? List.of() : new ArrayList<>(barrels.values());
+    }
+
+    /**
+     * Queues a change of an unloaded world without keeping it in memory; it is read back with the world.
+     *
+     * @return false if the world is loaded and the change has to be applied to memory as well
+     */
+    private boolean enqueueIfUnloaded(Entry entry) {
+        if (!unloadedWorlds.contains(entry.key().world())) {
+            return false;
+        }
+        synchronized (worldLock) {
+            // Checked again so a change cannot slip in between reading the world back and marking it loaded
+            if (!unloadedWorlds.contains(entry.key().world())) {
+                return false;
+            }
+            enqueue(entry);
+            return true;
+        }
+    }
+
+    /**
+     * Reads an unloaded world's barrels back into memory. Runs on the storage thread; changes queued for the world
+     * are appended first so the journal has all of them.
+     */
+    private void loadWorld(String world) {
+        synchronized (worldLock) {
+            if (!unloadedWorlds.contains(world)) {
+                return; // Read back by an earlier chunk load
+            }
+            append();
+            Map<BarrelKey, BarrelSnapshot> stored = readStored(Set.of(world));
+            byChunk.keySet().removeIf(key -> key.world().equals(world));
+            stored.values().forEach(this::apply);
+            unloadedWorlds.remove(world);
+        }
+    }
+
+    /**
+     * Queues an entry and has the storage thread append it, along with whatever else is queued by then.
+     */
+    private void enqueue(Entry entry) {
+        queued.add(entry);
+        if (appendQueued.compareAndSet(false, true)) {
+            try {
+                io.execute(() -> {
+                    appendQueued.set(false);
+                    append();
+                });
+            } catch (RejectedExecutionException e) {
+                appendQueued.set(false); // Shutting down; close() appends what is left
+            }
+        }
+    }
+
+    private void append() {
+        if (journal == null || queued.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(batch)) {
+            Entry entry;
+            while ((entry = queued.poll()) != null) {
+                writeEntry(out, entry);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to encode barrel journal entries: " + e.getMessage());
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            unsynced = true;
+        } catch (IOException e) {
+            logger.severe("Failed to append to " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Syncs what was appended since the last sync; one sync per period rather than per entry.
+     */
+    private void sync() {
+        if (journal == null || !unsynced) {
+            return;
+        }
+        try {
+            journal.force(false);
+            unsynced = false;
+        } catch (IOException e) {
+            logger.severe("Failed to sync " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Empties the journal and writes its header for the current generation.
+     */
+    private void resetJournal() throws IOException {
+        journal.truncate(0);
+        journal.position(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put((byte) VERSION).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+        journal.force(false);
+        unsynced = false;
+    }
+
+    private void compactIfLarge() {
+        try {
+            if (journal != null && journal.size() > Math.max(MIN_COMPACT_BYTES, snapshotBytes)) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to check " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every barrel into a snapshot of the next generation, then starts an empty journal of that
+     * generation. Entries queued meanwhile are newer than the snapshot and land in the fresh journal.
+     *
+     * @return false if the snapshot could not be written; the journal is then left as it is
+     */
+    private boolean compact() {
+        List<BarrelSnapshot> all = new ArrayList<>();
+        for (Map.Entry<ChunkKey, Map<BarrelKey, BarrelSnapshot>> chunk : byChunk.entrySet()) {
+            if (!unloadedWorlds.contains(chunk.getKey().world())) {
+                all.addAll(chunk.getValue().values());
+            }
+        }
+        if (!unloadedWorlds.isEmpty()) {
+            // Only on disk; everything queued for them was appended before compacting
+            all.addAll(readStored(Set.copyOf(unloadedWorlds)).values());
+        }
+        try {
+            writeSnapshot(all, generation + 1);
+        } catch (IOException e) {
+            logger.severe("Failed to compact barrel journal: " + e.getMessage());
+            return false;
+        }
+        // From here on the old journal is never replayed, even if emptying it fails
+        generation++;
+        snapshotBytes = snapshotFile.length();
+        if (journal != null) {
+            try {
+                resetJournal();
+            } catch (IOException e) {
+                logger.severe("Failed to empty " + journalFile.getName() + "; barrel changes will not be saved: " + e.getMessage());
+                journal = null;
+            }
+        }
+        return true;
+    }
+
+    private void writeSnapshot(List<BarrelSnapshot> barrels, long snapshotGeneration) throws IOException {
+        File temp = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshotGeneration);
+            BarrelCodec.write(out, barrels);
+            out.flush();
+            file.getFD().sync();
+        }
+        // Replace in one step so a crash mid-save never leaves a truncated snapshot behind
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the snapshot and the generation of journal that belongs to it. Snapshots written before generations
+     * existed have no header and count as generation 0.
+     */
+    private void readSnapshot() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            in.mark(4);
+            if (in.readInt() == SNAPSHOT_MAGIC) {
+                generation = in.readLong();
+            } else {
+                in.reset();
+            }
+            BarrelCodec.read(in, this::apply);
+        } catch (IOException e) {
+            logger.severe("Failed to load " + snapshotFile.getName() + ": " + e.getMessage());
+        }
+        snapshotBytes = snapshotFile.length();
+    }
+
+    /**
+     * Reads the barrels of the given worlds from the snapshot and the journal as they are on disk now. Must be
+     * called on the storage thread after appending, or once it stopped.
+     */
+    private Map<BarrelKey, BarrelSnapshot> readStored(Set<String> worlds) {
+        Map<BarrelKey, BarrelSnapshot> stored = new HashMap<>();
+        Consumer<BarrelSnapshot> upsert = snapshot -> {
+            if (worlds.contains(snapshot.key().world())) {
+                stored.put(snapshot.key(), snapshot);
+            }
+        };
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                in.mark(4);
+                if (in.readInt() == SNAPSHOT_MAGIC) {
+                    in.readLong();
+                } else {
+                    in.reset();
+                }
+                BarrelCodec.read(in, upsert);
+            } catch (IOException e) {
+                logger.severe("Failed to read " + snapshotFile.getName() + " back for " + worlds + ": " + e.getMessage());
+            }
+        }
+        if (journal != null) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(journalFile.toPath())));
+                in.readInt();
+                if (in.readUnsignedByte() > 1) {
+                    in.readLong(); // Opened or started by this run, so of the current generation
+                }
+                while (in.available() > 0) {
+                    readEntry(in, upsert, stored::remove);
+                }
+            } catch (IOException e) {
+                logger.severe("Failed to read " + journalFile.getName() + " back for " + worlds + ": " + e.getMessage());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Applies the journal to what the snapshot loaded, stopping at the first incomplete or damaged entry and
+     * cutting the file there. A journal of another generation was already folded into the snapshot and is
+     * emptied instead.
+     *
+     * @return the number of entries applied
+     */
+    private long replay() {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        byte[] data;
+        try {
+            data = Files.readAllBytes(journalFile.toPath());
+        } catch (IOException e) {
+            logger.severe("Failed to read " + journalFile.getName() + ": " + e.getMessage());
+            return 0;
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        DataInputStream in = new DataInputStream(bytes);
+        long applied = 0;
+        int validEnd = 0;
+        try {
+            if (data.length < 5 || in.readInt() != MAGIC) {
+                logger.severe(journalFile.getName() + " is not a barrel journal; ignoring it.");
+                return 0;
+            }
+            int version = in.readUnsignedByte();
+            if (version < 1 || version > VERSION) {
+                logger.severe(journalFile.getName() + " has an unknown version; ignoring it.");
+                return 0;
+            }
+            long journalGeneration = version == 1 ? 0 : in.readLong(); // Version 1 had no generations
+            if (journalGeneration != generation) {
+                logger.info(journalFile.getName() + " was already folded into " + snapshotFile.getName() + "; starting a new one.");
+                truncate(0);
+                return 0;
+            }
+            validEnd = data.length - bytes.available();
+            while (bytes.available() > 0) {
+                readEntry(in, this::apply, this::forget);
+                applied++;
+                validEnd = data.length - bytes.available();
+            }
+        } catch (IOException e) {
+            logger.warning("Discarding " + (data.length - validEnd) + " bytes of incomplete barrel journal entries: " + e.getMessage());
+            truncate(validEnd);
+        }
+        return applied;
+    }
+
+    private void truncate(long size) {
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        } catch (IOException e) {
+            logger.severe("Failed to repair " + journalFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream body = new DataOutputStream(payload)) {
+            if (entry.type() == UPSERT) {
+                BarrelCodec.writeSnapshot(body, entry.snapshot());
+            } else {
+                BarrelCodec.writeKey(body, entry.key());
+            }
+        }
+        byte[] bytes = payload.toByteArray();
+        out.writeByte(entry.type());
+        BarrelCodec.writeVarInt(out, bytes.length);
+        out.write(bytes);
+        out.writeInt(checksum(entry.type(), bytes));
+    }
+
+    private static void readEntry(DataInputStream in, Consumer<BarrelSnapshot> upsert, Consumer<BarrelKey> remove) throws IOException {
+        byte type = in.readByte();
+        int length = BarrelCodec.readVarInt(in);
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("entry cut short");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        if (in.readInt() != checksum(type, bytes)) {
+            throw new IOException("checksum mismatch");
+        }
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes));
+        switch (type) {
+            case UPSERT -> upsert.accept(BarrelCodec.readSnapshot(body));
+            case REMOVE -> remove.accept(BarrelCodec.readKey(body));
+            default -> throw new IOException("unknown entry type " + type);
+        }
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Adds barrels from region files for positions the journal has nothing for, and compacts so they are part
+     * of the snapshot. The region files are retired and the import recorded only once all of them were read;
+     * otherwise the import is tried again on the next start.
+     */
+    private void importLegacy() {
+        legacy.open();
+        List<BarrelSnapshot> imported = new ArrayList<>();
+        boolean complete = legacy.readAll(snapshot -> {
+            Map<BarrelKey, BarrelSnapshot> barrels = byChunk.computeIfAbsent(chunkOf(snapshot.key()), chunk -> new ConcurrentHashMap<>());
+            if (barrels.putIfAbsent(snapshot.key(), snapshot) == null) {
+                imported.add(snapshot);
+            }
+        });
+        if (!imported.isEmpty() && !compact()) {
+            logger.severe("Failed to import region files into the barrel journal; trying again on the next start.");
+            return;
+        }
+        if (!complete) {
+            logger.severe("Some region files could not be read; they have been left in place and will be imported on the next start.");
+            return;
+        }
+        try {
+            Files.writeString(importMarker.toPath(), "region files imported" + System.lineSeparator());
+        } catch (IOException e) {
+            logger.severe("Could not write " + importMarker.getPath() + "; region files will be imported again on the next start: " + e.getMessage());
+            return;
+        }
+        legacy.retire();
+        if (!imported.isEmpty()) {
+            logger.info("Moved " + imported.size() + " cheese barrels from region files into the barrel journal.");
+        }
+    }
+
+    private static ChunkKey chunkOf(BarrelKey key) {
+        return new ChunkKey(key.world(), BarrelRegistry.chunkKey(key.x() >> 4, key.z() >> 4));
+    }
+
+    private record ChunkKey(String world, long chunk) {
+    }
+
+    private record Entry(byte type, BarrelKey key, BarrelSnapshot snapshot) {
+    }
+}
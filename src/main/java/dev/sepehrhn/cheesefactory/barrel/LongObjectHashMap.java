@@ -0,0 +1,164 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import java.util.function.Consumer;
+
+/**
+ * Small open-addressing map from primitive {@code long} keys to non-null values.
+ * <p>
+ * Linear probing with backward-shift deletion, so there are no tombstones and lookups never box or allocate.
+ * Keys and values live in one {@link Table} that is swapped as a whole on resize, which lets a reader holding
+ * an optimistic stamp probe it without ever indexing past the end of an array. Not thread-safe on its own.
+ */
+final class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private Table<V> table;
+    private int size;
+
+    LongObjectHashMap() {
+        this.table = new Table<>(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    V get(long key) {
+        Table<V> t = table;
+        int mask = t.values.length - 1;
+        int index = mix(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            V value = t.values[index];
+            if (value == null) {
+                return null;
+            }
+            if (t.keys[index] == key) {
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value for the key, or null if there was none
+     */
+    V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        Table<V> t = table;
+        int mask = t.values.length - 1;
+        int index = mix(key) & mask;
+        while (t.values[index] != null) {
+            if (t.keys[index] == key) {
+                V previous = t.values[index];
+                t.values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        t.keys[index] = key;
+        t.values[index] = value;
+        if (++size > (t.values.length >> 1)) {
+            resize(t.values.length << 1);
+        }
+        return null;
+    }
+
+    V remove(long key) {
+        Table<V> t = table;
+        int mask = t.values.length - 1;
+        int index = mix(key) & mask;
+        while (t.values[index] != null) {
+            if (t.keys[index] == key) {
+                V removed = t.values[index];
+                shiftBack(t, index);
+                size--;
+                return removed;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    void forEachValue(Consumer<? super V> action) {
+        Table<V> t = table;
+        for (V value : t.values) {
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+    void clear() {
+        table = new Table<>(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void shiftBack(Table<V> t, int hole) {
+        int mask = t.values.length - 1;
+        int index = hole;
+        while (true) {
+            index = (index + 1) & mask;
+            V value = t.values[index];
+            if (value == null) {
+                break;
+            }
+            int home = mix(t.keys[index]) & mask;
+            // Move the entry into the hole unless its home slot lies cyclically between the hole and its position
+            boolean stays = hole <= index ? (hole < home && home <= index) : (hole < home || home <= index);
+            if (!stays) {
+                t.keys[hole] = t.keys[index];
+                t.values[hole] = value;
+                hole = index;
+            }
+        }
+        t.values[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        Table<V> old = table;
+        Table<V> grown = new Table<>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.values.length; i++) {
+            V value = old.values[i];
+            if (value == null) {
+                continue;
+            }
+            int index = mix(old.keys[i]) & mask;
+            while (grown.values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            grown.keys[index] = old.keys[i];
+            grown.values[index] = value;
+        }
+        table = grown;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    private static final class Table<V> {
+        private final long[] keys;
+        private final V[] values;
+
+        @SuppressWarnings("unchecked")
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = (V[]) new Object[capacity];
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Fermentation progress kept in fixed-size records of a memory-mapped file, {@code progress.map}, so that a
+ * progress change is a plain memory write the operating system persists on its own.
+ * <p>
+ * Each barrel that ever had progress gets a record, addressed by a slot index held in its state and found again
+ * on startup by the barrel's position. Records are newer than the progress in regular storage, which then only
+ * needs to be saved when a barrel's contents change. Free records are reused.
+ * <p>
+ * When the store is turned off, an existing file is still read: each barrel takes its progress from the file
+ * once and is then saved with regular storage. The file is deleted once no barrel depends on it any more.
+ */
+public class ProgressStore {
+
+    private static final int MAGIC = 0x43465047; // "CFPG"
+    private static final int VERSION = 1;
+    private static final int SLOTS = 27;
+    private static final int HEADER_BYTES = 16;
+    // used flag, world name hash, x, y, z, then progress and start time per slot
+    private static final int RECORD_BYTES = 4 + 8 + 12 + SLOTS * 12;
+    private static final int INITIAL_RECORDS = 1024;
+
+    private final File file;
+    private final Logger logger;
+    private final Map<RecordKey, Integer> index = new HashMap<>();
+    private final Deque<Integer> free = new ArrayDeque<>();
+    // Records already copied to a barrel while retiring, cleared on close
+    private final List<Integer> retired = new ArrayList<>();
+    private final ReadWriteLock mapping = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+    private int used;
+    private boolean retiring;
+
+    public ProgressStore(File dataFolder, Logger logger) {
+        this.file = new File(dataFolder, "progress.map");
+        this.logger = logger;
+    }
+
+    /**
+     * Maps the file and indexes its records. When disabled, {@link #write} always returns false and progress is
+     * saved with the rest of the barrel; a file left from when the store was enabled is only read from.
+     */
+    public void open(boolean enabled) {
+        if (!enabled) {
+            if (!file.exists()) {
+                return;
+            }
+            retiring = true;
+            logger.info("Memory-mapped progress is disabled; moving progress from " + file.getName() + " back to barrel data as barrels load.");
+        }
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                remap(INITIAL_RECORDS);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_BYTES);
+                return;
+            }
+            remap((int) ((size - HEADER_BYTES) / RECORD_BYTES));
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_BYTES) {
+                logger.severe(file.getName() + " has an unknown layout; progress will be saved with barrel data instead.");
+                retiring = false; // Keep a file that could not be read
+                close();
+                return;
+            }
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = offset(slot);
+                if (buffer.getInt(offset) == 0) {
+                    continue;
+                }
+                RecordKey key = new RecordKey(buffer.getLong(offset + 4), buffer.getInt(offset + 12), buffer.getInt(offset + 16), buffer.getInt(offset + 20));
+                if (index.putIfAbsent(key, slot) != null) {
+                    buffer.putInt(offset, 0); // Duplicate left behind by a crash; the first one wins
+                } else {
+                    used = Math.max(used, slot + 1);
+                }
+            }
+            for (int slot = used - 1; slot >= 0; slot--) {
+                if (buffer.getInt(offset(slot)) == 0) {
+                    free.push(slot);
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to open " + file.getName() + "; progress will be saved with barrel data instead: " + e.getMessage());
+            retiring = false;
+            close();
+        }
+    }
+
+    /**
+     * Overrides a restored barrel's progress with its record, if it has one.
+     *
+     * @return true if the progress came from a file that is being retired, so the barrel has to be saved
+     */
+    boolean restore(CheeseBarrelState state) {
+        Integer slot;
+        synchronized (this) {
+            slot = retiring ? index.remove(keyOf(state)) : index.get(keyOf(state));
+            if (slot != null && retiring) {
+                retired.add(slot);
+            }
+        }
+        if (slot == null) {
+            return false;
+        }
+        mapping.readLock().lock();
+        try {
+            MappedByteBuffer current = buffer;
+            if (current == null) {
+                return false;
+            }
+            int offset = offset(slot) + 24;
+            for (int i = 0; i < SLOTS; i++) {
+                state.resetProgress(i);
+                state.addProgress(i, current.getInt(offset + i * 12));
+                state.setStartTime(i, current.getLong(offset + i * 12 + 4));
+            }
+        } finally {
+            mapping.readLock().unlock();
+        }
+        if (retiring) {
+            return true;
+        }
+        state.progressSlot = slot;
+        return false;
+    }
+
+    /**
+     * Copies a barrel's progress into its record, allocating one on first use. Must be called on the barrel's
+     * region thread.
+     *
+     * @return false if the store is disabled and progress has to be saved with the barrel
+     */
+    boolean write(CheeseBarrelState state) {
+        if (retiring || buffer == null) {
+            return false;
+        }
+        int slot = state.progressSlot;
+        if (slot < 0) {
+            slot = allocate(state);
+            if (slot < 0) {
+                return false;
+            }
+        }
+        int[] progress = state.getAllProgress();
+        long[] starts = state.getAllStartTimes();
+        mapping.readLock().lock();
+        try {
+            MappedByteBuffer current = buffer;
+            if (current == null) {
+                return false; // Closed while the barrel was being saved
+            }
+            int offset = offset(slot) + 24;
+            for (int i = 0; i < SLOTS; i++) {
+                current.putInt(offset + i * 12, progress[i]);
+                current.putLong(offset + i * 12 + 4, starts[i]);
+            }
+        } finally {
+            mapping.readLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Frees the record of a barrel that was removed.
+     */
+    void release(CheeseBarrelState state) {
+        int slot = state.progressSlot;
+        if (slot < 0) {
+            return;
+        }
+        state.progressSlot = -1;
+        mapping.readLock().lock();
+        try {
+            MappedByteBuffer current = buffer;
+            if (current == null) {
+                return;
+            }
+            current.putInt(offset(slot), 0);
+        } finally {
+            mapping.readLock().unlock();
+        }
+        synchronized (this) {
+            index.remove(keyOf(state));
+            free.push(slot);
+        }
+    }
+
+    /**
+     * Must be called after barrels were saved, since records retired this run are cleared here.
+     */
+    public void close() {
+        List<Integer> cleared;
+        boolean empty;
+        synchronized (this) {
+            cleared = new ArrayList<>(retired);
+            retired.clear();
+            empty = index.isEmpty();
+        }
+        mapping.writeLock().lock();
+        try {
+            MappedByteBuffer current = buffer;
+            buffer = null;
+            if (current != null) {
+                for (int slot : cleared) {
+                    current.putInt(offset(slot), 0);
+                }
+                current.force();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.severe("Failed to close " + file.getName() + ": " + e.getMessage());
+                }
+                channel = null;
+            }
+        } finally {
+            mapping.writeLock().unlock();
+        }
+        if (retiring && empty) {
+            if (file.delete()) {
+                logger.info("All progress was moved out of " + file.getName() + "; the file was deleted.");
+            } else {
+                logger.warning("Failed to delete " + file.getPath() + "; it is no longer used.");
+            }
+        }
+    }
+
+    private synchronized int allocate(CheeseBarrelState state) {
+        RecordKey key = keyOf(state);
+        Integer existing = index.get(key);
+        if (existing != null) {
+            // Left behind by an earlier barrel at this position
+            state.progressSlot = existing;
+            return existing;
+        }
+        Integer slot = free.poll();
+        if (slot == null) {
+            if (used == capacity) {
+                mapping.writeLock().lock();
+                try {
+                    if (buffer == null) {
+                        return -1;
+                    }
+                    remap(capacity * 2);
+                } catch (IOException e) {
+                    logger.severe("Failed to grow " + file.getName() + ": " + e.getMessage());
+                    return -1;
+                } finally {
+                    mapping.writeLock().unlock();
+                }
+            }
+            slot = used++;
+        }
+        mapping.readLock().lock();
+        try {
+            MappedByteBuffer current = buffer;
+            if (current == null) {
+                return -1;
+            }
+            int offset = offset(slot);
+            current.putLong(offset + 4, key.worldHash()).putInt(offset + 12, key.x()).putInt(offset + 16, key.y()).putInt(offset + 20, key.z());
+            current.putInt(offset, 1);
+        } finally {
+            mapping.readLock().unlock();
+        }
+        index.put(key, slot);
+        state.progressSlot = slot;
+        return slot;
+    }
+
+    private void remap(int records) throws IOException {
+        capacity = Math.max(records, INITIAL_RECORDS);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    private static RecordKey keyOf(CheeseBarrelState state) {
+        BarrelKey key = BarrelKey.of(state.getLocation());
+        return new RecordKey(hash(key.world()), key.x(), key.y(), key.z());
+    }
+
+    /**
+     * 64-bit FNV-1a of the world name, so records stay fixed-size.
+     */
+    private static long hash(String world) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : world.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private record RecordKey(long worldHash, int x, int y, int z) {
+    }
+}
@@ -0,0 +1,514 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Barrel data sharded like the world itself: one {@link BarrelCodec} file per world and 32x32 chunk region,
+ * at {@code barrels/<world>/r.<x>.<z>.dat}.
+ * <p>
+ * A region file is read in the background the first time one of its chunks loads and dropped from memory once
+ * none of its chunks are loaded, so memory and startup time follow the part of the world that is in use. Item
+ * stacks stay serialized until a barrel is actually used. Each loaded region keeps the latest snapshot of its
+ * barrels, grouped by chunk; saving rewrites only the regions whose snapshots changed.
+ */
+public class RegionFileBarrelStorage implements BarrelStorage {
+
+    private static final int REGION_SHIFT = 5;
+
+    private final File directory;
+    private final File legacyBinaryFile;
+    private final File legacyYamlFile;
+    // Written once barrels.dat/barrels.yml are split into region files, so they are never migrated twice
+    private final File legacyMarker;
+    private final Logger logger;
+    private final Map<RegionKey, Region> regions = new ConcurrentHashMap<>();
+    // Final writes of regions whose world unloaded; reading them again waits for these
+    private final Map<RegionKey, CompletableFuture<Void>> unloading = new ConcurrentHashMap<>();
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CheeseFactory Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Regions are independent files, so they are read in parallel; writes stay on the single storage thread
+    private final ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), runnable -> {
+        Thread thread = new Thread(runnable, "CheeseFactory Storage Reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RegionFileBarrelStorage(File dataFolder, Logger logger) {
+        this.directory = new File(dataFolder, "barrels");
+        this.legacyBinaryFile = new File(dataFolder, "barrels.dat");
+        this.legacyYamlFile = new File(dataFolder, "barrels.yml");
+        this.legacyMarker = new File(dataFolder, "barrels.legacy-migrated");
+        this.logger = logger;
+    }
+
+    private static RegionKey regionOf(String world, int chunkX, int chunkZ) {
+        return new RegionKey(world, chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT);
+    }
+
+    private static RegionKey regionOf(BarrelKey key) {
+        return regionOf(key.world(), key.x() >> 4, key.z() >> 4);
+    }
+
+    /**
+     * Reads the whole region on a reader thread the first time any of its chunks is asked for, then answers
+     * from memory until none of its chunks are loaded anymore.
+     */
+    @Override
+    public CompletableFuture<List<BarrelSnapshot>> loadChunk(World world, int chunkX, int chunkZ) {
+        long chunk = BarrelRegistry.chunkKey(chunkX, chunkZ);
+        Region region = regions.compute(regionOf(world.getName(), chunkX, chunkZ), (key, existing) -> {
+            Region found = existing != null ? existing : newRegion(key);
+            found.loadedChunks.add(chunk);
+            return found;
+        });
+        if (region.loaded.isDone()) {
+            return CompletableFuture.completedFuture(region.inChunk(chunk));
+        }
+        return region.loaded.thenApply(ignored -> region.inChunk(chunk));
+    }
+
+    /**
+     * Whether region files exist for a world, used to look for barrels left behind when switching backends.
+     */
+    boolean hasRegions(String world) {
+        String[] files = new File(directory, world).list();
+        return files != null && files.length > 0;
+    }
+
+    /**
+     * Reads every region file on the calling thread, used when moving barrels to another backend.
+     *
+     * @return false if a file could not be read completely
+     */
+    boolean readAll(Consumer<BarrelSnapshot> consumer) {
+        File[] worlds = directory.listFiles(File::isDirectory);
+        if (worlds == null) {
+            return true;
+        }
+        boolean complete = true;
+        for (File world : worlds) {
+            File[] files = world.listFiles((dir, name) -> name.startsWith("r.") && name.endsWith(".dat"));
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    BarrelCodec.read(in, consumer);
+                } catch (IOException e) {
+                    logger.severe("Failed to read " + file.getPath() + ": " + e.getMessage());
+                    complete = false;
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Renames the region directory aside once its barrels have been moved to another backend.
+     */
+    void retire() {
+        if (directory.isDirectory() && !directory.renameTo(new File(directory.getParentFile(), directory.getName() + ".migrated"))) {
+            logger.warning("Could not rename " + directory.getName() + " after migrating it; it is ignored from now on.");
+        }
+    }
+
+    @Override
+    public void put(BarrelSnapshot snapshot) {
+        Region region = region(regionOf(snapshot.key()));
+        region.put(snapshot);
+        region.dirty = true;
+    }
+
+    @Override
+    public void remove(BarrelKey key) {
+        Region region = regions.get(regionOf(key));
+        if (region != null && region.remove(key)) {
+            region.dirty = true;
+        }
+    }
+
+    /**
+     * Forgets a region once the last of its loaded chunks unloads, writing what it still has unsaved first.
+     */
+    @Override
+    public void unloadChunk(World world, int chunkX, int chunkZ) {
+        long chunk = BarrelRegistry.chunkKey(chunkX, chunkZ);
+        Region[] evicted = new Region[1];
+        regions.computeIfPresent(regionOf(world.getName(), chunkX, chunkZ), (key, region) -> {
+            region.loadedChunks.remove(chunk);
+            if (!region.loadedChunks.isEmpty()) {
+                return region;
+            }
+            evicted[0] = region;
+            return null;
+        });
+        if (evicted[0] != null) {
+            evict(evicted[0]);
+        }
+    }
+
+    /**
+     * Writes the world's changed regions on the storage thread and forgets them; they are read again when one of
+     * their chunks next loads.
+     */
+    @Override
+    public void unloadWorld(String world) {
+        for (Region region : regions.values()) {
+            if (region.key.world().equals(world) && regions.remove(region.key, region)) {
+                evict(region);
+            }
+        }
+    }
+
+    /**
+     * Writes the regions that changed on the storage thread. Regions that were only read or written for barrels
+     * outside loaded chunks are dropped from memory afterwards.
+     */
+    @Override
+    public CompletableFuture<Void> saveAsync() {
+        List<CompletableFuture<Void>> evictions = new ArrayList<>();
+        for (Region region : regions.values()) {
+            if (region.loaded.isDone() && removeIfIdle(region)) {
+                evictions.add(evict(region));
+            }
+        }
+        List<Runnable> writes = new ArrayList<>();
+        for (Region region : regions.values()) {
+            // A region still being read would be written without the barrels in its file; it stays dirty
+            if (region.dirty && region.loaded.isDone()) {
+                region.dirty = false;
+                List<BarrelSnapshot> batch = region.all();
+                writes.add(() -> write(region, batch));
+            }
+        }
+        if (writes.isEmpty() && evictions.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        evictions.add(CompletableFuture.runAsync(() -> writes.forEach(Runnable::run), io));
+        return CompletableFuture.allOf(evictions.toArray(new CompletableFuture[0]));
+    }
+
+    private boolean removeIfIdle(Region region) {
+        boolean[] removed = new boolean[1];
+        regions.computeIfPresent(region.key, (key, current) -> {
+            if (current != region || !current.loadedChunks.isEmpty()) {
+                return current;
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Waits for pending reads and writes, then writes the regions that still changed on the calling thread.
+     */
+    @Override
+    public void close() {
+        readers.shutdown();
+        io.shutdown();
+        try {
+            if (!readers.awaitTermination(30, TimeUnit.SECONDS) || !io.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for pending barrel storage work; saving again now.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Region region : regions.values()) {
+            if (region.dirty && region.loaded.isDone()) {
+                region.dirty = false;
+                write(region, region.all());
+            }
+        }
+    }
+
+    /**
+     * Splits barrels.dat or barrels.yml from older versions into region files, on the calling thread.
+     */
+    @Override
+    public void open() {
+        if (legacyMarker.exists()) {
+            for (File leftover : new File[]{legacyBinaryFile, legacyYamlFile}) {
+                if (leftover.exists()) {
+                    logger.warning(leftover.getName() + " was already migrated into region files and is ignored; it can be deleted.");
+                }
+            }
+            return;
+        }
+        List<BarrelSnapshot> legacy;
+        File source;
+        if (legacyBinaryFile.exists()) {
+            source = legacyBinaryFile;
+            legacy = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(legacyBinaryFile)))) {
+                BarrelCodec.read(in, legacy::add);
+            } catch (IOException e) {
+                logger.severe("Could not read " + legacyBinaryFile.getName() + " for migration; it has been left in place: " + e.getMessage());
+                return;
+            }
+        } else if (legacyYamlFile.exists()) {
+            source = legacyYamlFile;
+            legacy = loadLegacyYaml();
+        } else {
+            return;
+        }
+
+        Map<RegionKey, List<BarrelSnapshot>> byRegion = new HashMap<>();
+        for (BarrelSnapshot snapshot : legacy) {
+            byRegion.computeIfAbsent(regionOf(snapshot.key()), key -> new ArrayList<>()).add(snapshot);
+        }
+        for (Map.Entry<RegionKey, List<BarrelSnapshot>> entry : byRegion.entrySet()) {
+            if (!writeFile(fileOf(entry.getKey()), entry.getValue())) {
+                logger.severe("Could not migrate " + source.getName() + "; it has been left in place.");
+                return;
+            }
+        }
+        boolean marked = markMigrated(source);
+        File migrated = new File(source.getParentFile(), source.getName() + ".migrated");
+        if (!source.renameTo(migrated)) {
+            if (marked) {
+                logger.warning("Migrated " + source.getName() + " but could not rename it; " + legacyMarker.getName() + " records the migration, so it is ignored from now on.");
+            } else {
+                logger.severe("Migrated " + source.getName() + " but could neither rename it nor record the migration. Move it away before the next start, or it will be migrated again over newer barrel data.");
+            }
+        }
+        logger.info("Migrated " + legacy.size() + " cheese barrels from " + source.getName() + " into " + byRegion.size() + " region files.");
+    }
+
+    private boolean markMigrated(File source) {
+        try {
+            Files.writeString(legacyMarker.toPath(), source.getName() + System.lineSeparator());
+            return true;
+        } catch (IOException e) {
+            logger.severe("Could not write " + legacyMarker.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Region region(RegionKey key) {
+        return regions.computeIfAbsent(key, this::newRegion);
+    }
+
+    private Region newRegion(RegionKey key) {
+        Region region = new Region(key);
+        CompletableFuture<Void> flushed = unloading.get(key);
+        region.loaded = flushed == null
+                ? CompletableFuture.supplyAsync(() -> read(region), readers)
+                : flushed.handleAsync((ignored, error) -> read(region), readers);
+        return region;
+    }
+
+    /**
+     * Writes what is still unsaved of a region that was dropped from memory, on the storage thread once it is
+     * read and after any write already queued. Reading it again waits for this write.
+     */
+    private CompletableFuture<Void> evict(Region region) {
+        CompletableFuture<Void> flushed = region.loaded.thenRunAsync(() -> {
+            if (region.dirty) {
+                region.dirty = false;
+                write(region, region.all());
+            }
+        }, io);
+        unloading.put(region.key, flushed);
+        flushed.whenComplete((ignored, error) -> unloading.remove(region.key, flushed));
+        return flushed;
+    }
+
+    private List<BarrelSnapshot> read(Region region) {
+        List<BarrelSnapshot> loaded = new ArrayList<>();
+        File file = fileOf(region.key);
+        if (!file.exists()) {
+            return loaded;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            BarrelCodec.read(in, loaded::add);
+        } catch (IOException e) {
+            logger.severe("Failed to load " + file.getPath() + " (" + loaded.size() + " barrels read): " + e.getMessage());
+            // The next save only contains what could be read, so keep the damaged file around
+            File backup = new File(file.getParentFile(), file.getName() + ".corrupt-" + System.currentTimeMillis());
+            try {
+                Files.copy(file.toPath(), backup.toPath());
+                logger.severe("A copy of the unreadable file was saved as " + backup.getName() + ".");
+            } catch (IOException copyError) {
+                logger.severe("Could not back up " + file.getName() + ": " + copyError.getMessage());
+            }
+        }
+        for (BarrelSnapshot snapshot : loaded) {
+            // Snapshots put while the file was being read are newer than the file
+            region.putIfAbsent(snapshot);
+        }
+        return loaded;
+    }
+
+    private void write(Region region, List<BarrelSnapshot> batch) {
+        File file = fileOf(region.key);
+        if (batch.isEmpty()) {
+            // No barrels left in the region; don't keep an empty file around
+            if (file.exists() && !file.delete()) {
+                region.dirty = true;
+            }
+            return;
+        }
+        if (!writeFile(file, batch)) {
+            region.dirty = true; // Try again on the next save
+        }
+    }
+
+    private boolean writeFile(File file, List<BarrelSnapshot> batch) {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            logger.severe("Failed to create " + parent.getPath());
+            return false;
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            BarrelCodec.write(out, batch);
+        } catch (IOException e) {
+            logger.severe("Failed to save " + file.getPath() + ": " + e.getMessage());
+            return false;
+        }
+        try {
+            // Replace in one step so a crash mid-save never leaves a truncated file behind
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.severe("Failed to save " + file.getPath() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private File fileOf(RegionKey key) {
+        return new File(new File(directory, key.world()), "r." + key.x() + "." + key.z() + ".dat");
+    }
+
+    /**
+     * Reads the YAML format used before the binary files, including its older single-integer progress field.
+     */
+    private List<BarrelSnapshot> loadLegacyYaml() {
+        List<BarrelSnapshot> loaded = new ArrayList<>();
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(legacyYamlFile);
+        var list = config.getMapList("barrels");
+
+        for (Map<?, ?> map : list) {
+            try {
+                String worldName = (String) map.get("world");
+                int x = (int) map.get("x");
+                int y = (int) map.get("y");
+                int z = (int) map.get("z");
+
+                int[] progress = new int[27];
+                Object progressObj = map.get("progress");
+                if (progressObj instanceof Integer legacyProgress) {
+                    // Migration: Apply legacy progress to slot 0
+                    progress[0] = legacyProgress;
+                } else if (progressObj instanceof List<?> progList) {
+                    int slot = 0;
+                    for (Object obj : progList) {
+                        if (obj instanceof Number num && slot < progress.length) {
+                            progress[slot] = num.intValue();
+                        }
+                        slot++;
+                    }
+                }
+
+                long[] startTimes = new long[27];
+                Arrays.fill(startTimes, CheeseBarrelState.NOT_STARTED);
+                if (map.get("started") instanceof List<?> startList) {
+                    int slot = 0;
+                    for (Object obj : startList) {
+                        if (obj instanceof Number num && slot < startTimes.length) {
+                            startTimes[slot] = num.longValue();
+                        }
+                        slot++;
+                    }
+                }
+
+                BarrelItems items = null;
+                if (map.containsKey("inventory")) {
+                    @SuppressWarnings("unchecked")
+                    List<ItemStack> inventory = (List<ItemStack>) map.get("inventory");
+                    items = BarrelItems.ofStacks(inventory.toArray(new ItemStack[0]));
+                }
+                loaded.add(new BarrelSnapshot(new BarrelKey(worldName, x, y, z), progress, startTimes, items));
+            } catch (Exception e) {
+                logger.warning("Failed to load a barrel entry: " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    private record RegionKey(String world, int x, int z) {
+    }
+
+    private static final class Region {
+        private final RegionKey key;
+        private final Map<Long, Map<BarrelKey, BarrelSnapshot>> byChunk = new ConcurrentHashMap<>();
+        // Only changed inside compute calls on the region map
+        private final Set<Long> loadedChunks = ConcurrentHashMap.newKeySet();
+        private volatile boolean dirty;
+        private volatile CompletableFuture<List<BarrelSnapshot>> loaded;
+
+        private Region(RegionKey key) {
+            this.key = key;
+        }
+
+        private void put(BarrelSnapshot snapshot) {
+            chunkOf(snapshot.key()).put(snapshot.key(), snapshot);
+        }
+
+        private void putIfAbsent(BarrelSnapshot snapshot) {
+            chunkOf(snapshot.key()).putIfAbsent(snapshot.key(), snapshot);
+        }
+
+        private boolean remove(BarrelKey key) {
+            Map<BarrelKey, BarrelSnapshot> chunk = byChunk.get(BarrelRegistry.chunkKey(key.x() >> 4, key.z() >> 4));
+            return chunk != null && chunk.remove(key) != null;
+        }
+
+        private List<BarrelSnapshot> inChunk(long chunk) {
+            Map<BarrelKey, BarrelSnapshot> snapshots = byChunk.get(chunk);
+            return snapshots == null ? List.of() : new ArrayList<>(snapshots.values());
+        }
+
+        private List<BarrelSnapshot> all() {
+            List<BarrelSnapshot> all = new ArrayList<>();
+            for (Map<BarrelKey, BarrelSnapshot> chunk : byChunk.values()) {
+                all.addAll(chunk.values());
+            }
+            return all;
+        }
+
+        private Map<BarrelKey, BarrelSnapshot> chunkOf(BarrelKey key) {
+            return byChunk.computeIfAbsent(BarrelRegistry.chunkKey(key.x() >> 4, key.z() >> 4), chunk -> new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import org.bukkit.World;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps barrels in an embedded SQLite database, {@code barrels.db}, for servers with very many barrels.
+ * <p>
+ * Rows are indexed by world and chunk, so loading a chunk is a range query rather than a full read. The
+ * connection belongs to a single storage thread: changes are coalesced per barrel in memory and written on that
+ * thread as prepared-statement batches inside one transaction per save. Chunk reads overlay changes that are
+ * still waiting to be written.
+ */
+public class SqliteBarrelStorage implements BarrelStorage {
+
+    private static final String UPSERT =
+            "INSERT OR REPLACE INTO barrels (world, x, y, z, chunk_x, chunk_z, data) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String IMPORT =
+            "INSERT OR IGNORE INTO barrels (world, x, y, z, chunk_x, chunk_z, data) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String LEGACY_IMPORTED = "legacy_imported";
+
+    private final File databaseFile;
+    private final RegionFileBarrelStorage legacy;
+    private final Logger logger;
+    // Grouped by chunk so a chunk read only overlays its own changes; inner maps are added and dropped in compute calls
+    private final Map<ChunkKey, Map<BarrelKey, Change>> pending = new ConcurrentHashMap<>();
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CheeseFactory Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only used on the storage thread
+    private Connection connection;
+
+    public SqliteBarrelStorage(File dataFolder, Logger logger) {
+        this.databaseFile = new File(dataFolder, "barrels.db");
+        this.legacy = new RegionFileBarrelStorage(dataFolder, logger);
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the database and creates its tables, waiting for the storage thread. Until the database records that
+     * every region file was imported, barrels from region files (and the older global files they are migrated
+     * from) are imported for positions it has no row for.
+     */
+    @Override
+    public void open() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    statement.execute("PRAGMA synchronous=NORMAL");
+                    statement.execute("CREATE TABLE IF NOT EXISTS barrels ("
+                            + "world TEXT NOT NULL, x INTEGER NOT NULL, y INTEGER NOT NULL, z INTEGER NOT NULL, "
+                            + "chunk_x INTEGER NOT NULL, chunk_z INTEGER NOT NULL, data BLOB NOT NULL, "
+                            + "PRIMARY KEY (world, x, y, z))");
+                    statement.execute("CREATE INDEX IF NOT EXISTS barrels_by_chunk ON barrels (world, chunk_x, chunk_z)");
+                    statement.execute("CREATE TABLE IF NOT EXISTS meta (key TEXT PRIMARY KEY, value TEXT NOT NULL)");
+                }
+                connection.setAutoCommit(false);
+                if (!isLegacyImported()) {
+                    importLegacy();
+                }
+            } catch (SQLException e) {
+                logger.severe("Failed to open " + databaseFile.getName() + "; barrels will not be loaded or saved: " + e.getMessage());
+                connection = null;
+            }
+        }, io).join();
+    }
+
+    @Override
+    public CompletableFuture<List<BarrelSnapshot>> loadChunk(World world, int chunkX, int chunkZ) {
+        String worldName = world.getName();
+        return CompletableFuture.supplyAsync(() -> {
+            Map<BarrelKey, BarrelSnapshot> found = new HashMap<>();
+            if (connection != null) {
+                try (PreparedStatement select = connection.prepareStatement(
+                        "SELECT data FROM barrels WHERE world = ? AND chunk_x = ? AND chunk_z = ?")) {
+                    select.setString(1, worldName);
+                    select.setInt(2, chunkX);
+                    select.setInt(3, chunkZ);
+                    try (ResultSet rows = select.executeQuery()) {
+                        while (rows.next()) {
+                            BarrelSnapshot snapshot = decode(rows.getBytes(1));
+                            if (snapshot != null) {
+                                found.put(snapshot.key(), snapshot);
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    logger.severe("Failed to load cheese barrels of chunk " + chunkX + "," + chunkZ + " in " + worldName + ": " + e.getMessage());
+                }
+            }
+            // Changes not written yet are newer than the database
+            Map<BarrelKey, Change> changes = pending.get(new ChunkKey(worldName, chunkX, chunkZ));
+            if (changes != null) {
+                for (Map.Entry<BarrelKey, Change> entry : changes.entrySet()) {
+                    if (entry.getValue().snapshot() == null) {
+                        found.remove(entry.getKey());
+                    } else {
+                        found.put(entry.getKey(), entry.getValue().snapshot());
+                    }
+                }
+            }
+            return new ArrayList<>(found.values());
+        }, io);
+    }
+
+    @Override
+    public void put(BarrelSnapshot snapshot) {
+        queue(snapshot.key(), new Change(snapshot));
+    }
+
+    @Override
+    public void remove(BarrelKey key) {
+        queue(key, new Change(null));
+    }
+
+    private void queue(BarrelKey key, Change change) {
+        pending.compute(ChunkKey.of(key), (chunk, changes) -> {
+            changes = changes == null ? new ConcurrentHashMap<>() : changes;
+            changes.put(key, change);
+            return changes;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAsync() {
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(this::writePending, io);
+    }
+
+    @Override
+    public void close() {
+        io.execute(() -> {
+            writePending();
+            try {
+                if (connection != null) {
+                    connection.close();
+                }
+            } catch (SQLException e) {
+                logger.severe("Failed to close " + databaseFile.getName() + ": " + e.getMessage());
+            }
+        });
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for barrel changes to be written to " + databaseFile.getName() + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writePending() {
+        if (connection == null || pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<BarrelKey, Change>> batch = new ArrayList<>();
+        for (Map<BarrelKey, Change> changes : pending.values()) {
+            batch.addAll(changes.entrySet());
+        }
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement(
+                     "DELETE FROM barrels WHERE world = ? AND x = ? AND y = ? AND z = ?")) {
+            for (Map.Entry<BarrelKey, Change> entry : batch) {
+                BarrelKey key = entry.getKey();
+                BarrelSnapshot snapshot = entry.getValue().snapshot();
+                if (snapshot == null) {
+                    delete.setString(1, key.world());
+                    delete.setInt(2, key.x());
+                    delete.setInt(3, key.y());
+                    delete.setInt(4, key.z());
+                    delete.addBatch();
+                } else {
+                    bindUpsert(upsert, snapshot);
+                }
+            }
+            upsert.executeBatch();
+            delete.executeBatch();
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            logger.severe("Failed to save cheese barrels to " + databaseFile.getName() + ": " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                logger.severe("Failed to roll back: " + rollbackError.getMessage());
+            }
+            return; // Left pending for the next save
+        }
+        for (Map.Entry<BarrelKey, Change> entry : batch) {
+            // Keep a change made while this batch was being written
+            pending.computeIfPresent(ChunkKey.of(entry.getKey()), (chunk, changes) -> {
+                changes.remove(entry.getKey(), entry.getValue());
+                return changes.isEmpty() ? null : changes;
+            });
+        }
+    }
+
+    /**
+     * Adds a barrel's row to a batch of {@link #UPSERT} or {@link #IMPORT}, which take the same parameters.
+     */
+    private void bindUpsert(PreparedStatement upsert, BarrelSnapshot snapshot) throws SQLException, IOException {
+        BarrelKey key = snapshot.key();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BarrelCodec.writeSnapshot(out, snapshot);
+        }
+        upsert.setString(1, key.world());
+        upsert.setInt(2, key.x());
+        upsert.setInt(3, key.y());
+        upsert.setInt(4, key.z());
+        upsert.setInt(5, key.x() >> 4);
+        upsert.setInt(6, key.z() >> 4);
+        upsert.setBytes(7, bytes.toByteArray());
+        upsert.addBatch();
+    }
+
+    private BarrelSnapshot decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return BarrelCodec.readSnapshot(in);
+        } catch (IOException e) {
+            logger.warning("Skipping an unreadable barrel row: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isLegacyImported() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT 1 FROM meta WHERE key = ?")) {
+            select.setString(1, LEGACY_IMPORTED);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next();
+            }
+        }
+    }
+
+    /**
+     * Imports what can be read from region files without replacing existing rows. The import is recorded in the
+     * same transaction, and only once every file was read; the region files are then retired.
+     */
+    private void importLegacy() throws SQLException {
+        legacy.open();
+        List<BarrelSnapshot> imported = new ArrayList<>();
+        boolean complete = legacy.readAll(imported::add);
+        try (PreparedStatement insert = connection.prepareStatement(IMPORT);
+             PreparedStatement mark = connection.prepareStatement("INSERT OR REPLACE INTO meta (key, value) VALUES (?, ?)")) {
+            for (BarrelSnapshot snapshot : imported) {
+                bindUpsert(insert, snapshot);
+            }
+            insert.executeBatch();
+            if (complete) {
+                mark.setString(1, LEGACY_IMPORTED);
+                mark.setString(2, Long.toString(System.currentTimeMillis()));
+                mark.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            logger.severe("Failed to import region files into " + databaseFile.getName() + "; trying again on the next start: " + e.getMessage());
+            return;
+        }
+        if (!complete) {
+            logger.severe("Some region files could not be read; they have been left in place and will be imported on the next start.");
+            return;
+        }
+        legacy.retire();
+        if (!imported.isEmpty()) {
+            logger.info("Moved " + imported.size() + " cheese barrels from region files into " + databaseFile.getName() + ".");
+        }
+    }
+
+    /**
+     * A pending change; a null snapshot removes the barrel.
+     */
+    private record Change(BarrelSnapshot snapshot) {
+    }
+
+    private record ChunkKey(String world, int x, int z) {
+
+        static ChunkKey of(BarrelKey key) {
+            return new ChunkKey(key.world(), key.x() >> 4, key.z() >> 4);
+        }
+    }
+}
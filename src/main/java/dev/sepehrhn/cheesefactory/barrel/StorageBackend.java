@@ -0,0 +1,34 @@
+package dev.sepehrhn.cheesefactory.barrel;
+
+import java.util.Locale;
+
+public enum StorageBackend {
+    /**
+     * One binary file per world region in the plugin folder, see {@link RegionFileBarrelStorage}.
+     */
+    REGION_FILES,
+    /**
+     * Inside each chunk's persistent data, saved by the server together with the chunk, see
+     * {@link ChunkPdcBarrelStorage}.
+     */
+    CHUNK_PDC,
+    /**
+     * A snapshot plus an append-only journal of changes, see {@link JournalBarrelStorage}.
+     */
+    JOURNAL,
+    /**
+     * An embedded SQLite database indexed by chunk, see {@link SqliteBarrelStorage}.
+     */
+    SQLITE;
+
+    public static StorageBackend parse(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return valueOf(raw.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dev.sepehrhn.cheesefactory.cheese;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Weighted random choice in constant time using Vose's alias method. Built once per reload; a draw is one
+ * random column and one biased coin flip, however many cheeses there are.
+ */
+final class AliasTable {
+
+    private final CheeseDefinition[] entries;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param entries cheeses with a weight of at least 1; must not be empty
+     */
+    AliasTable(List<CheeseDefinition> entries) {
+        int n = entries.size();
+        this.entries = entries.toArray(new CheeseDefinition[0]);
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        long total = 0;
+        for (CheeseDefinition def : entries) {
+            total += def.weight();
+        }
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) this.entries[i].weight() * n / total;
+            (scaled[i] < 1.0 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            (scaled[more] < 1.0 ? small : large).push(more);
+        }
+        // Whatever is left is 1 up to rounding
+        while (!large.isEmpty()) {
+            probability[large.pop()] = 1.0;
+        }
+        while (!small.isEmpty()) {
+            probability[small.pop()] = 1.0;
+        }
+    }
+
+    CheeseDefinition draw(SplittableRandom random) {
+        int column = random.nextInt(entries.length);
+        return random.nextDouble() < probability[column] ? entries[column] : entries[alias[column]];
+    }
+}
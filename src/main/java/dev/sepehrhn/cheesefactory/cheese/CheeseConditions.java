@@ -0,0 +1,32 @@
+package dev.sepehrhn.cheesefactory.cheese;
+
+import org.bukkit.NamespacedKey;
+
+import java.util.Set;
+
+/**
+ * Where a cheese can come out of a barrel. An empty set places no restriction.
+ */
+public class CheeseConditions {
+    public static final CheeseConditions ANY = new CheeseConditions(Set.of(), Set.of());
+
+    private final Set<String> worlds;
+    private final Set<NamespacedKey> biomes;
+
+    public CheeseConditions(Set<String> worlds, Set<NamespacedKey> biomes) {
+        this.worlds = Set.copyOf(worlds);
+        this.biomes = Set.copyOf(biomes);
+    }
+
+    public Set<String> worlds() {
+        return worlds;
+    }
+
+    public Set<NamespacedKey> biomes() {
+        return biomes;
+    }
+
+    public boolean isUnrestricted() {
+        return worlds.isEmpty() && biomes.isEmpty();
+    }
+}
@@ -6,6 +6,7 @@ import java.util.List;
 
 public class CheeseDefinition {
     private final String id;
+    private final int number;
     private final String rawName;
     private final Component displayName;
     private final int weight;
@@ -14,9 +15,11 @@ public class CheeseDefinition {
     private final List<Component> lore;
     private final CustomIdDefinition customId;
     private final Integer customModelData;
+    private final CheeseConditions conditions;
 
     public CheeseDefinition(
             String id,
+            int number,
             String rawName,
             Component displayName,
             int weight,
@@ -24,9 +27,11 @@ public class CheeseDefinition {
             List<String> rawLore,
             List<Component> lore,
             CustomIdDefinition customId,
-            Integer customModelData
+            Integer customModelData,
+            CheeseConditions conditions
     ) {
         this.id = id;
+        this.number = number;
         this.rawName = rawName;
         this.displayName = displayName;
         this.weight = weight;
@@ -35,12 +40,20 @@ public class CheeseDefinition {
         this.lore = lore;
         this.customId = customId;
         this.customModelData = customModelData;
+        this.conditions = conditions;
     }
 
     public String id() {
         return id;
     }
 
+    /**
+     * Stable number stored on cheese items in place of the id, see cheese_ids.yml.
+     */
+    public int number() {
+        return number;
+    }
+
     public String rawName() {
         return rawName;
     }
@@ -72,4 +85,8 @@ public class CheeseDefinition {
     public Integer customModelData() {
         return customModelData;
     }
+
+    public CheeseConditions conditions() {
+        return conditions;
+    }
 }
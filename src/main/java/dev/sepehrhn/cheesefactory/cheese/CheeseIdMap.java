@@ -0,0 +1,78 @@
+package dev.sepehrhn.cheesefactory.cheese;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Stable numbers for cheese ids, kept in {@code cheese_ids.yml}. Cheese items carry the number instead of the
+ * id string. A cheese keeps its number across reloads and restarts, and numbers are never handed out twice,
+ * so items of a removed cheese never turn into a different one.
+ */
+final class CheeseIdMap {
+
+    private final File file;
+    private final Logger logger;
+    private final Map<String, Integer> numbers = new HashMap<>();
+    private int next = 1;
+    private boolean changed;
+
+    private CheeseIdMap(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    static CheeseIdMap load(File dataFolder, Logger logger) {
+        CheeseIdMap map = new CheeseIdMap(new File(dataFolder, "cheese_ids.yml"), logger);
+        if (!map.file.exists()) {
+            return map;
+        }
+        YamlConfiguration cfg = YamlConfiguration.loadConfiguration(map.file);
+        Map<Integer, String> owners = new HashMap<>();
+        for (String id : cfg.getKeys(false)) {
+            int number = cfg.getInt(id, 0);
+            String owner = owners.putIfAbsent(number, id);
+            if (number < 1 || owner != null) {
+                logger.warning("Ignoring invalid number " + number + " for cheese '" + id + "' in " + map.file.getName() + "; it will get a new one.");
+                continue;
+            }
+            map.numbers.put(id, number);
+            map.next = Math.max(map.next, number + 1);
+        }
+        return map;
+    }
+
+    /**
+     * The cheese's number, assigning the next free one to a cheese seen for the first time.
+     */
+    int numberOf(String id) {
+        return numbers.computeIfAbsent(id, k -> {
+            changed = true;
+            return next++;
+        });
+    }
+
+    void saveIfChanged() {
+        if (!changed) {
+            return;
+        }
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.options().setHeader(List.of(
+                "Numbers CheeseFactory stores on cheese items in place of their id.",
+                "Do not change or reuse them, or existing cheese items will become a different cheese."));
+        numbers.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .forEach(entry -> cfg.set(entry.getKey(), entry.getValue()));
+        try {
+            cfg.save(file);
+            changed = false;
+        } catch (IOException e) {
+            logger.severe("Failed to save " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
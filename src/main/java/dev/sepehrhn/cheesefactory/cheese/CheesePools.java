@@ -0,0 +1,84 @@
+package dev.sepehrhn.cheesefactory.cheese;
+
+import org.bukkit.NamespacedKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * The cheeses a barrel can produce, precomputed for every combination of world and biome named in cheese
+ * conditions. Worlds and biomes no cheese mentions share one "anywhere else" column, and combinations that
+ * end up with the same cheeses share one {@link AliasTable}. A draw is two hash lookups and a table draw.
+ */
+final class CheesePools {
+
+    static final CheesePools EMPTY = new CheesePools(List.of());
+
+    // Column 0 of each axis stands for every world or biome not listed here
+    private final Map<String, Integer> worlds = new HashMap<>();
+    private final Map<NamespacedKey, Integer> biomes = new HashMap<>();
+    private final int biomeColumns;
+    private final AliasTable[] tables; // null where nothing can be produced
+
+    CheesePools(List<CheeseDefinition> entries) {
+        Map<String, Integer> worldOrder = new LinkedHashMap<>();
+        Map<NamespacedKey, Integer> biomeOrder = new LinkedHashMap<>();
+        for (CheeseDefinition def : entries) {
+            def.conditions().worlds().forEach(world -> worldOrder.putIfAbsent(world, worldOrder.size() + 1));
+            def.conditions().biomes().forEach(biome -> biomeOrder.putIfAbsent(biome, biomeOrder.size() + 1));
+        }
+        worlds.putAll(worldOrder);
+        biomes.putAll(biomeOrder);
+        String[] worldAt = new String[worldOrder.size() + 1];
+        worldOrder.forEach((world, column) -> worldAt[column] = world);
+        NamespacedKey[] biomeAt = new NamespacedKey[biomeOrder.size() + 1];
+        biomeOrder.forEach((biome, column) -> biomeAt[column] = biome);
+
+        biomeColumns = biomeAt.length;
+        tables = new AliasTable[worldAt.length * biomeColumns];
+        Map<List<CheeseDefinition>, AliasTable> shared = new HashMap<>();
+        for (int w = 0; w < worldAt.length; w++) {
+            for (int b = 0; b < biomeColumns; b++) {
+                List<CheeseDefinition> eligible = new ArrayList<>();
+                for (CheeseDefinition def : entries) {
+                    if (allows(def.conditions(), worldAt[w], biomeAt[b])) {
+                        eligible.add(def);
+                    }
+                }
+                if (!eligible.isEmpty()) {
+                    tables[w * biomeColumns + b] = shared.computeIfAbsent(eligible, AliasTable::new);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether draws depend on the biome, so callers can skip looking it up otherwise.
+     */
+    boolean usesBiomes() {
+        return !biomes.isEmpty();
+    }
+
+    /**
+     * @param biome the barrel's biome, or null if {@link #usesBiomes()} is false
+     * @return null if no cheese can be produced there
+     */
+    CheeseDefinition draw(String world, NamespacedKey biome, SplittableRandom random) {
+        int w = world == null ? 0 : worlds.getOrDefault(world, 0);
+        int b = biome == null ? 0 : biomes.getOrDefault(biome, 0);
+        AliasTable table = tables[w * biomeColumns + b];
+        return table == null ? null : table.draw(random);
+    }
+
+    /**
+     * A null world or biome is the "anywhere else" column, which only unrestricted cheeses allow.
+     */
+    private static boolean allows(CheeseConditions conditions, String world, NamespacedKey biome) {
+        return (conditions.worlds().isEmpty() || world != null && conditions.worlds().contains(world))
+                && (conditions.biomes().isEmpty() || biome != null && conditions.biomes().contains(biome));
+    }
+}
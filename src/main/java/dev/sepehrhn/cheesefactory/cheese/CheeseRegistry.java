@@ -7,7 +7,11 @@ import dev.sepehrhn.cheesefactory.integration.NexoItemProvider;
 import dev.sepehrhn.cheesefactory.item.CheeseItemManager;
 import dev.sepehrhn.cheesefactory.item.CheeseKeys;
 import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.World;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
@@ -21,21 +25,23 @@ import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
 
+/**
+ * The cheeses defined in cheese.yml and the items built from them.
+ * <p>
+ * Everything loaded is held in one immutable {@link Catalog} that reloads replace as a whole, so lookups,
+ * random picks and item creation are safe from any region thread without locking. Only reloads and template
+ * rebuilds, which are rare, are serialized. Each thread draws from its own random generator.
+ */
 public class CheeseRegistry {
     private static final Material DEFAULT_CHEESE_MATERIAL = Material.PUMPKIN_PIE;
 
+    private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
+
     private final CheeseFactoryPlugin plugin;
     private final CheeseKeys keys;
     private final CheeseItemManager itemManager;
     private final MiniMessage mm = MiniMessage.miniMessage();
-    private final Map<String, CheeseDefinition> cheeses = new LinkedHashMap<>();
-    private final Random random = new Random();
-
-    private boolean hasNexo;
-    private boolean hasCraftEngine;
-    private int totalWeight;
-    private ExternalItemProvider nexoProvider;
-    private ExternalItemProvider craftEngineProvider;
+    private volatile Catalog catalog = Catalog.EMPTY;
 
     public CheeseRegistry(CheeseFactoryPlugin plugin, CheeseKeys keys, CheeseItemManager itemManager) {
         this.plugin = plugin;
@@ -43,7 +49,7 @@ public class CheeseRegistry {
         this.itemManager = itemManager;
     }
 
-    public void reload() {
+    public synchronized void reload() {
         File dataFile = new File(plugin.getDataFolder(), "cheese.yml");
         if (!dataFile.exists()) {
             plugin.saveResource("cheese.yml", false);
@@ -57,13 +63,15 @@ public class CheeseRegistry {
             return;
         }
 
-        cheeses.clear();
-        totalWeight = 0;
+        Map<String, CheeseDefinition> cheeses = new LinkedHashMap<>();
         Logger log = plugin.getLogger();
-        hasNexo = plugin.getServer().getPluginManager().getPlugin("Nexo") != null;
-        hasCraftEngine = plugin.getServer().getPluginManager().getPlugin("CraftEngine") != null;
-        nexoProvider = hasNexo ? new NexoItemProvider(plugin) : null;
-        craftEngineProvider = hasCraftEngine ? new CraftEngineItemProvider(plugin) : null;
+        CheeseIdMap numbers = CheeseIdMap.load(plugin.getDataFolder(), log);
+        boolean hasNexo = plugin.getServer().getPluginManager().getPlugin("Nexo") != null;
+        boolean hasCraftEngine = plugin.getServer().getPluginManager().getPlugin("CraftEngine") != null;
+        Providers providers = new Providers(
+                hasNexo ? new NexoItemProvider(plugin) : null,
+                hasCraftEngine ? new CraftEngineItemProvider(plugin) : null
+        );
 
         for (String id : cfg.getKeys(false)) {
             String path = id + ".";
@@ -90,6 +98,10 @@ public class CheeseRegistry {
             List<String> rawEffects = cfg.getStringList(path + "effects");
             List<CheeseEffectDefinition> effects = parseEffects(rawEffects, id, log);
             Integer customModelData = resolveCmd(cfg, path + "minecraft_item.custom_model_data", path + "custom_model_data");
+            CheeseConditions conditions = parseConditions(cfg, path + "conditions", id, log);
+            if (conditions == null) {
+                continue;
+            }
 
             var displayName = mm.deserialize(rawName);
             var lore = new ArrayList<net.kyori.adventure.text.Component>();
@@ -99,6 +111,7 @@ public class CheeseRegistry {
 
             CheeseDefinition definition = new CheeseDefinition(
                     id,
+                    numbers.numberOf(id),
                     rawName,
                     displayName,
                     weight,
@@ -106,12 +119,22 @@ public class CheeseRegistry {
                     rawLore,
                     lore,
                     customId,
-                    customModelData
+                    customModelData,
+                    conditions
             );
             cheeses.put(id, definition);
-            totalWeight += weight;
         }
 
+        numbers.saveIfChanged();
+        List<CheeseDefinition> entries = List.copyOf(cheeses.values());
+        int highest = entries.stream().mapToInt(CheeseDefinition::number).max().orElse(0);
+        CheeseDefinition[] byNumber = new CheeseDefinition[highest + 1];
+        for (CheeseDefinition def : entries) {
+            byNumber[def.number()] = def;
+        }
+        Catalog loaded = new Catalog(Collections.unmodifiableMap(cheeses), byNumber, entries, new CheesePools(entries), providers, Map.of());
+        catalog = loaded.withTemplates(buildTemplates(loaded));
+
         if (cheeses.isEmpty()) {
             log.warning("No cheeses loaded from cheese.yml. Fermentation will not produce cheese until this is fixed.");
         } else {
@@ -119,27 +142,84 @@ public class CheeseRegistry {
         }
     }
 
-    public Optional<CheeseDefinition> randomCheese() {
-        if (cheeses.isEmpty() || totalWeight <= 0) {
-            return Optional.empty();
-        }
-        int roll = random.nextInt(totalWeight) + 1;
-        int cumulative = 0;
-        for (CheeseDefinition def : cheeses.values()) {
-            cumulative += def.weight();
-            if (roll <= cumulative) {
-                return Optional.of(def);
-            }
+    /**
+     * Picks a weighted random cheese among those allowed at a barrel's location.
+     *
+     * @return null if no cheese can be produced there
+     */
+    public CheeseDefinition randomCheese(Location location) {
+        CheesePools pools = catalog.pools();
+        World world = location.getWorld();
+        if (world == null) {
+            return pools.draw(null, null, RANDOM.get());
         }
-        return Optional.empty();
+        NamespacedKey biome = pools.usesBiomes()
+                ? world.getBiome(location.getBlockX(), location.getBlockY(), location.getBlockZ()).getKey()
+                : null;
+        return pools.draw(world.getName(), biome, RANDOM.get());
     }
 
     public Optional<CheeseDefinition> getById(String id) {
-        return Optional.ofNullable(cheeses.get(id));
+        return Optional.ofNullable(catalog.byId().get(id));
+    }
+
+    /**
+     * Looks a cheese up by the number stored on its items.
+     *
+     * @return null if no loaded cheese has that number
+     */
+    public CheeseDefinition getByNumber(int number) {
+        CheeseDefinition[] byNumber = catalog.byNumber();
+        return number > 0 && number < byNumber.length ? byNumber[number] : null;
+    }
+
+    /**
+     * Retags a cheese item made by an older version, which stored the cheese id as a string, with its cheese
+     * number. Items of cheeses that are no longer loaded are left alone.
+     *
+     * @return true if the item was changed
+     */
+    public boolean upgradeLegacy(ItemStack stack) {
+        if (stack == null || !stack.hasItemMeta()) {
+            return false;
+        }
+        String id = stack.getPersistentDataContainer().get(keys.cheeseId(), PersistentDataType.STRING);
+        CheeseDefinition def = id == null ? null : catalog.byId().get(id);
+        if (def == null) {
+            return false;
+        }
+        stack.editMeta(meta -> {
+            var pdc = meta.getPersistentDataContainer();
+            pdc.remove(keys.cheeseId());
+            pdc.set(keys.cheeseNumber(), PersistentDataType.INTEGER, def.number());
+        });
+        return true;
+    }
+
+    /**
+     * Rebuilds every cheese item template from the loaded definitions, e.g. after a reload or once Nexo has loaded its items.
+     */
+    public synchronized void rebuildTemplates() {
+        Catalog current = catalog;
+        catalog = current.withTemplates(buildTemplates(current));
     }
 
     public ItemStack createItem(CheeseDefinition def) {
-        ResolvedItem resolved = resolveBaseItem(def);
+        Catalog current = catalog;
+        ItemStack template = current.templates().get(def.id());
+        return template != null ? template.clone() : buildItem(def, current.providers());
+    }
+
+    private Map<String, ItemStack> buildTemplates(Catalog catalog) {
+        Map<String, ItemStack> built = new HashMap<>();
+        for (CheeseDefinition def : catalog.entries()) {
+            built.put(def.id(), buildItem(def, catalog.providers()));
+        }
+        return Map.copyOf(built);
+    }
+
+    private ItemStack buildItem(CheeseDefinition def, Providers providers) {
+        ResolvedItem resolved = resolveBaseItem(def, providers);
         ItemStack stack = resolved.stack();
         ItemMeta meta = stack.getItemMeta();
 
@@ -152,7 +232,7 @@ public class CheeseRegistry {
         }
 
         var pdc = meta.getPersistentDataContainer();
-        pdc.set(keys.cheeseId(), PersistentDataType.STRING, def.id());
+        pdc.set(keys.cheeseNumber(), PersistentDataType.INTEGER, def.number());
         CustomIdDefinition custom = def.customId();
         if (custom != null) {
             String type = resolved.type();
@@ -165,10 +245,11 @@ public class CheeseRegistry {
         }
 
         stack.setItemMeta(meta);
+        itemManager.classifier().learn(stack.getType(), !"minecraft".equals(resolved.type()));
         return stack;
     }
 
-    private ResolvedItem resolveBaseItem(CheeseDefinition def) {
+    private ResolvedItem resolveBaseItem(CheeseDefinition def, Providers providers) {
         CustomIdDefinition custom = def.customId();
         String type = normalizeType(custom);
         String itemId = custom == null ? null : custom.item();
@@ -187,17 +268,17 @@ public class CheeseRegistry {
                 }
             }
             case "nexo" -> {
-                if (!hasNexo) {
+                if (providers.nexo() == null) {
                     plugin.getLogger().warning("Nexo not found but cheese '" + def.id() + "' requests it; using default material with CheeseFactory name/lore.");
-                } else if (nexoProvider != null && itemId != null) {
-                    externalStack = nexoProvider.createItem(itemId);
+                } else if (itemId != null) {
+                    externalStack = providers.nexo().createItem(itemId);
                 }
             }
             case "craftengine" -> {
-                if (!hasCraftEngine) {
+                if (providers.craftEngine() == null) {
                     plugin.getLogger().warning("CraftEngine not found but cheese '" + def.id() + "' requests it; using default material with CheeseFactory name/lore.");
-                } else if (craftEngineProvider != null && itemId != null) {
-                    externalStack = craftEngineProvider.createItem(itemId);
+                } else if (itemId != null) {
+                    externalStack = providers.craftEngine().createItem(itemId);
                 }
             }
             default -> plugin.getLogger().warning("Unknown custom_id.type '" + type + "' for cheese '" + def.id() + "'. Using default material with CheeseFactory name/lore.");
@@ -269,9 +350,65 @@ public class CheeseRegistry {
         return new CustomIdDefinition(type, item);
     }
 
+    /**
+     * Reads the optional worlds and biomes a cheese is limited to.
+     *
+     * @return null if the cheese should be skipped because none of its listed biomes exist
+     */
+    private CheeseConditions parseConditions(FileConfiguration cfg, String path, String cheeseId, Logger log) {
+        if (!cfg.isConfigurationSection(path)) {
+            return CheeseConditions.ANY;
+        }
+        Set<String> worlds = new HashSet<>(cfg.getStringList(path + ".worlds"));
+        List<String> rawBiomes = cfg.getStringList(path + ".biomes");
+        Set<NamespacedKey> biomes = new HashSet<>();
+        for (String raw : rawBiomes) {
+            NamespacedKey key = NamespacedKey.fromString(raw.trim().toLowerCase(Locale.ROOT));
+            if (key == null || Registry.BIOME.get(key) == null) {
+                log.warning("Unknown biome '" + raw + "' for cheese '" + cheeseId + "'; ignoring.");
+                continue;
+            }
+            biomes.add(key);
+        }
+        if (!rawBiomes.isEmpty() && biomes.isEmpty()) {
+            log.warning("Skipping cheese '" + cheeseId + "' because none of its biomes exist.");
+            return null;
+        }
+        return worlds.isEmpty() && biomes.isEmpty() ? CheeseConditions.ANY : new CheeseConditions(worlds, biomes);
+    }
+
     private record ResolvedItem(ItemStack stack, boolean externalProvided, String type) {
     }
 
+    /**
+     * Item plugins found at reload; null when not installed.
+     */
+    private record Providers(ExternalItemProvider nexo, ExternalItemProvider craftEngine) {
+    }
+
+    /**
+     * One immutable load of cheese.yml.
+     *
+     * @param byNumber  definitions indexed by cheese number, with gaps for numbers of removed cheeses
+     * @param entries   definitions in file order
+     * @param pools     weighted picks per world and biome
+     * @param templates finished cheese items keyed by cheese id; createItem hands out clones
+     */
+    private record Catalog(
+            Map<String, CheeseDefinition> byId,
+            CheeseDefinition[] byNumber,
+            List<CheeseDefinition> entries,
+            CheesePools pools,
+            Providers providers,
+            Map<String, ItemStack> templates
+    ) {
+        static final Catalog EMPTY = new Catalog(Map.of(), new CheeseDefinition[1], List.of(), CheesePools.EMPTY, new Providers(null, null), Map.of());
+
+        Catalog withTemplates(Map<String, ItemStack> templates) {
+            return new Catalog(byId, byNumber, entries, pools, providers, templates);
+        }
+    }
+
     private String resolveName(FileConfiguration cfg, String newPath, String legacyPath) {
         String value = cfg.getString(newPath);
         if (value == null || value.isBlank()) {
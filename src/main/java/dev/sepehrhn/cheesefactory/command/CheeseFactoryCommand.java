@@ -11,12 +11,23 @@ import org.bukkit.entity.Player;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
 
+    // Checked per subcommand so players can use inspect and effects without admin rights
+    private static final Map<String, String> SUBCOMMAND_PERMISSIONS = new LinkedHashMap<>();
+
+    static {
+        SUBCOMMAND_PERMISSIONS.put("reload", "cheesefactory.admin");
+        SUBCOMMAND_PERMISSIONS.put("give", "cheesefactory.admin");
+        SUBCOMMAND_PERMISSIONS.put("inspect", "cheesefactory.inspect");
+        SUBCOMMAND_PERMISSIONS.put("effects", "cheesefactory.effects");
+    }
+
     private final CheeseFactoryPlugin plugin;
     private final LocaleManager locale;
 
@@ -43,6 +54,9 @@ public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
             if (args[0].equalsIgnoreCase("inspect")) {
                 return handleInspect(sender, args);
             }
+            if (args[0].equalsIgnoreCase("effects")) {
+                return handleEffects(sender);
+            }
         }
 
         sender.sendMessage(locale.component(sender, "command.usage", Collections.singletonMap("command", label)));
@@ -51,10 +65,11 @@ public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
 
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
-        if (args.length == 1 && sender.hasPermission("cheesefactory.admin")) {
+        if (args.length == 1) {
             String arg = args[0].toLowerCase(Locale.ROOT);
-            return List.of("reload", "give", "inspect").stream()
-                    .filter(opt -> opt.startsWith(arg))
+            return SUBCOMMAND_PERMISSIONS.entrySet().stream()
+                    .filter(entry -> entry.getKey().startsWith(arg) && sender.hasPermission(entry.getValue()))
+                    .map(Map.Entry::getKey)
                     .toList();
         }
         if (args.length == 2 && sender.hasPermission("cheesefactory.admin") && args[0].equalsIgnoreCase("give")) {
@@ -66,6 +81,10 @@ public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
     }
 
     private boolean handleGive(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("cheesefactory.admin")) {
+            sender.sendMessage(locale.component(sender, "command.no-permission"));
+            return true;
+        }
         if (args.length < 2) {
             sender.sendMessage(locale.component(sender, "command.usage", Collections.singletonMap("command", "cheesefactory")));
             return true;
@@ -216,9 +235,27 @@ public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean handleEffects(CommandSender sender) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(locale.component(sender, "effects.player_only"));
+            return true;
+        }
+
+        if (!player.hasPermission("cheesefactory.effects")) {
+            sender.sendMessage(locale.component(sender, "command.no-permission"));
+            return true;
+        }
+
+        boolean shown = plugin.getBarrelManager().getEffects().toggle(player);
+        sender.sendMessage(locale.component(sender, shown ? "effects.shown" : "effects.hidden"));
+        return true;
+    }
+
     private void displayBarrelInfo(Player player, org.bukkit.block.Block block, dev.sepehrhn.cheesefactory.barrel.CheeseBarrelState state) {
         var loc = block.getLocation();
-        int fermentationTicks = plugin.getConfig().getInt("fermentation.time_ticks", 9600);
+        var barrelManager = plugin.getBarrelManager();
+        int fermentationTicks = barrelManager.getFermentationTicks();
+        barrelManager.refresh(state);
 
         // Header
         player.sendMessage(org.bukkit.ChatColor.GOLD + "=== Cheese Barrel Inspector ===");
@@ -231,7 +268,7 @@ public class CheeseFactoryCommand implements CommandExecutor, TabCompleter {
         int fermenting = 0;
         for (int slot = 0; slot < 9; slot++) {
             var item = state.getInventory().getItem(slot);
-            int progress = state.getProgress(slot);
+            int progress = barrelManager.getProgress(state, slot);
 
             if (item == null || item.getType().isAir()) {
                 player.sendMessage(org.bukkit.ChatColor.DARK_GRAY + "Slot " + (slot + 1) + ": Empty");
@@ -0,0 +1,24 @@
+package dev.sepehrhn.cheesefactory.integration;
+
+import com.nexomc.nexo.api.events.NexoItemsLoadedEvent;
+import dev.sepehrhn.cheesefactory.CheeseFactoryPlugin;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+/**
+ * Nexo loads its items after CheeseFactory has enabled, and again on /nexo reload. Item templates built before
+ * that fell back to vanilla materials, so they are rebuilt whenever Nexo reports its items are ready.
+ */
+public class NexoItemsLoadListener implements Listener {
+
+    private final CheeseFactoryPlugin plugin;
+
+    public NexoItemsLoadListener(CheeseFactoryPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onNexoItemsLoaded(NexoItemsLoadedEvent event) {
+        plugin.rebuildItemTemplates();
+    }
+}
@@ -34,6 +34,7 @@ public class CheeseItemManager {
 
     private final CheeseFactoryPlugin plugin;
     private final CheeseKeys keys;
+    private final ItemClassifier classifier;
     private final MiniMessage mm = MiniMessage.miniMessage();
     private int cmdBacteria;
     private int cmdCurd;
@@ -51,16 +52,22 @@ public class CheeseItemManager {
     private String inoculatedMilkRawName = DEFAULT_INOCULATED_MILK_NAME;
     private java.util.List<String> inoculatedMilkRawLore = java.util.List.of();
     private CustomIdDefinition inoculatedMilkCustomId = DEFAULT_INOCULATED_MILK_ID;
+    // Finished items built once per reload; create* hands out clones
+    private volatile ItemStack bacteriaTemplate;
+    private volatile ItemStack curdTemplate;
+    private volatile ItemStack inoculatedMilkTemplate;
 
     public CheeseItemManager(CheeseFactoryPlugin plugin) {
         this.plugin = plugin;
         this.keys = new CheeseKeys(plugin);
+        this.classifier = new ItemClassifier(keys, plugin.getDataFolder(), plugin.getLogger());
         reload();
     }
 
     public void reload() {
         var config = plugin.getConfig();
         var log = plugin.getLogger();
+        classifier.beginReload();
         cmdBacteria = resolveCmd(config, log, "bacteria.minecraft_item.custom_model_data", "items.custom_model_data.bacteria", "items.custom-model-data.bacteria", 0);
         cmdCurd = resolveCmd(config, log, "curd.minecraft_item.custom_model_data", "items.custom_model_data.curd", "items.custom-model-data.curd", 0);
         cmdInoculatedMilk = resolveCmd(config, log, "inoculated_milk.minecraft_item.custom_model_data", "inoculated_milk.custom_model_data", null, 0);
@@ -82,6 +89,16 @@ public class CheeseItemManager {
         inoculatedMilkRawLore = resolveLore(config, "inoculated_milk.minecraft_item.lore", "inoculated_milk.item.lore", DEFAULT_INOCULATED_MILK_LORE);
         inoculatedMilkCustomId = parseCustomId(config, "inoculated_milk.custom_id", "inoculated_milk.item.custom_id", DEFAULT_INOCULATED_MILK_ID);
         
+        rebuildTemplates();
+    }
+
+    /**
+     * Rebuilds the item templates from the current config, e.g. after a reload or once Nexo has loaded its items.
+     */
+    public void rebuildTemplates() {
+        bacteriaTemplate = buildBacteriaItem();
+        curdTemplate = buildCurdItem();
+        inoculatedMilkTemplate = buildInoculatedMilk();
         registerRecipes();
     }
     
@@ -109,7 +126,26 @@ public class CheeseItemManager {
         return keys;
     }
 
+    public ItemClassifier classifier() {
+        return classifier;
+    }
+
     public ItemStack createBacteriaItem() {
+        return bacteriaTemplate.clone();
+    }
+
+    public ItemStack createCurdItem() {
+        ItemStack stack = curdTemplate.clone();
+        // Unique per curd so curds never stack
+        stack.editMeta(meta -> meta.getPersistentDataContainer().set(keys.curdUnique(), PersistentDataType.STRING, UUID.randomUUID().toString()));
+        return stack;
+    }
+
+    public ItemStack createInoculatedMilk() {
+        return inoculatedMilkTemplate.clone();
+    }
+
+    private ItemStack buildBacteriaItem() {
         ResolvedItem resolved = resolveBacteriaBase();
         ItemStack stack = resolved.stack();
         ItemMeta meta = stack.getItemMeta();
@@ -128,10 +164,11 @@ public class CheeseItemManager {
 
         meta.getPersistentDataContainer().set(keys.bacteria(), PersistentDataType.BYTE, (byte) 1);
         stack.setItemMeta(meta);
+        classifier.learn(stack.getType(), !"minecraft".equals(resolved.type()));
         return stack;
     }
 
-    public ItemStack createCurdItem() {
+    private ItemStack buildCurdItem() {
         ResolvedItem resolved = resolveCurdBase();
         ItemStack stack = resolved.stack();
         ItemMeta meta = stack.getItemMeta();
@@ -149,12 +186,12 @@ public class CheeseItemManager {
         }
 
         meta.getPersistentDataContainer().set(keys.curd(), PersistentDataType.BYTE, (byte) 1);
-        meta.getPersistentDataContainer().set(keys.curdUnique(), PersistentDataType.STRING, UUID.randomUUID().toString());
         stack.setItemMeta(meta);
+        classifier.learn(stack.getType(), !"minecraft".equals(resolved.type()));
         return stack;
     }
 
-    public ItemStack createInoculatedMilk() {
+    private ItemStack buildInoculatedMilk() {
         ResolvedItem resolved = resolveInoculatedMilkBase();
         ItemStack stack = resolved.stack();
         ItemMeta meta = stack.getItemMeta();
@@ -173,28 +210,20 @@ public class CheeseItemManager {
 
         meta.getPersistentDataContainer().set(keys.inoculatedMilk(), PersistentDataType.BYTE, (byte) 1);
         stack.setItemMeta(meta);
+        classifier.learn(stack.getType(), !"minecraft".equals(resolved.type()));
         return stack;
     }
 
     public boolean isBacteria(ItemStack stack) {
-        if (stack == null || stack.getType() == Material.AIR || !stack.hasItemMeta()) {
-            return false;
-        }
-        return stack.getItemMeta().getPersistentDataContainer().has(keys.bacteria(), PersistentDataType.BYTE);
+        return classifier.is(stack, FactoryItem.Kind.BACTERIA);
     }
 
     public boolean isCurd(ItemStack stack) {
-        if (stack == null || stack.getType() == Material.AIR || !stack.hasItemMeta()) {
-            return false;
-        }
-        return stack.getItemMeta().getPersistentDataContainer().has(keys.curd(), PersistentDataType.BYTE);
+        return classifier.is(stack, FactoryItem.Kind.CURD);
     }
 
     public boolean isInoculatedMilk(ItemStack stack) {
-        if (stack == null || stack.getType() == Material.AIR || !stack.hasItemMeta()) {
-            return false;
-        }
-        return stack.getItemMeta().getPersistentDataContainer().has(keys.inoculatedMilk(), PersistentDataType.BYTE);
+        return classifier.is(stack, FactoryItem.Kind.INOCULATED_MILK);
     }
 
     private CustomIdDefinition parseCustomId(org.bukkit.configuration.file.FileConfiguration cfg, String newPath, String legacyPath, CustomIdDefinition def) {
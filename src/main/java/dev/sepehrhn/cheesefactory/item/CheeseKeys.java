@@ -5,6 +5,7 @@ import org.bukkit.NamespacedKey;
 
 public final class CheeseKeys {
     private final NamespacedKey cheeseId;
+    private final NamespacedKey cheeseNumber;
     private final NamespacedKey customType;
     private final NamespacedKey customItem;
     private final NamespacedKey bacteria;
@@ -12,9 +13,12 @@ public final class CheeseKeys {
     private final NamespacedKey barrelItem;
     private final NamespacedKey cauldronState;
     private final NamespacedKey curdUnique;
+    private final NamespacedKey effectsHidden;
+    private final NamespacedKey chunkBarrels;
 
     public CheeseKeys(CheeseFactoryPlugin plugin) {
         this.cheeseId = new NamespacedKey(plugin, "cheese_id");
+        this.cheeseNumber = new NamespacedKey(plugin, "cheese_number");
         this.customType = new NamespacedKey(plugin, "custom_type");
         this.customItem = new NamespacedKey(plugin, "custom_item");
         this.bacteria = new NamespacedKey(plugin, "bacteria");
@@ -22,13 +26,22 @@ public final class CheeseKeys {
         this.barrelItem = new NamespacedKey(plugin, "cheese_barrel_item");
         this.cauldronState = new NamespacedKey(plugin, "cauldron_state");
         this.curdUnique = new NamespacedKey(plugin, "curd_unique_id");
+        this.effectsHidden = new NamespacedKey(plugin, "effects_hidden");
+        this.chunkBarrels = new NamespacedKey(plugin, "barrels");
         this.inoculatedMilk = new NamespacedKey(plugin, "inoculated_milk");
     }
 
+    /**
+     * String cheese id written by older versions; replaced by {@link #cheeseNumber()} when an item is seen.
+     */
     public NamespacedKey cheeseId() {
         return cheeseId;
     }
 
+    public NamespacedKey cheeseNumber() {
+        return cheeseNumber;
+    }
+
     public NamespacedKey customType() {
         return customType;
     }
@@ -57,6 +70,14 @@ public final class CheeseKeys {
         return curdUnique;
     }
 
+    public NamespacedKey effectsHidden() {
+        return effectsHidden;
+    }
+
+    public NamespacedKey chunkBarrels() {
+        return chunkBarrels;
+    }
+
     private final NamespacedKey inoculatedMilk;
 
     public NamespacedKey inoculatedMilk() {
@@ -0,0 +1,29 @@
+package dev.sepehrhn.cheesefactory.item;
+
+/**
+ * What a stack is as far as CheeseFactory is concerned. Only cheeses carry extra data: their cheese number,
+ * or for items made by older versions the cheese id string they were tagged with instead.
+ *
+ * @param legacyCheeseId non-null only for cheese items that still need converting to a number
+ */
+public record FactoryItem(Kind kind, int cheeseNumber, String legacyCheeseId) {
+
+    public static final FactoryItem CURD = new FactoryItem(Kind.CURD, 0, null);
+    public static final FactoryItem BACTERIA = new FactoryItem(Kind.BACTERIA, 0, null);
+    public static final FactoryItem INOCULATED_MILK = new FactoryItem(Kind.INOCULATED_MILK, 0, null);
+    public static final FactoryItem BARREL = new FactoryItem(Kind.BARREL, 0, null);
+    public static final FactoryItem NONE = new FactoryItem(Kind.NONE, 0, null);
+
+    public enum Kind {
+        CURD,
+        BACTERIA,
+        INOCULATED_MILK,
+        BARREL,
+        CHEESE,
+        NONE
+    }
+
+    public boolean is(Kind kind) {
+        return this.kind == kind;
+    }
+}
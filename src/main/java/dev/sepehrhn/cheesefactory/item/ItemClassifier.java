@@ -0,0 +1,144 @@
+package dev.sepehrhn.cheesefactory.item;
+
+import io.papermc.paper.persistence.PersistentDataContainerView;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Tells which factory item a stack is, if any, without cloning its meta.
+ * <p>
+ * Stacks are first rejected by material: only materials that factory items have actually been built from can
+ * match. Those materials are remembered in {@code known_item_materials.txt} across restarts, so items made
+ * before an item's material was changed in the config are still recognised. The tag is then read through the
+ * stack's read-only PDC view. Results for cheeses are interned per cheese number (or legacy id string) so
+ * classifying a cheese does not allocate either.
+ * <p>
+ * Nothing is cached per stack: Paper item stacks are mutable and have no stable meta object to key on, so
+ * a cached answer could outlive a change to the stack.
+ */
+public class ItemClassifier {
+
+    private final CheeseKeys keys;
+    private final File materialsFile;
+    private final Logger logger;
+    private final Map<Integer, FactoryItem> cheeses = new ConcurrentHashMap<>();
+    private final Map<String, FactoryItem> legacyCheeses = new ConcurrentHashMap<>();
+    private volatile EnumSet<Material> materials = EnumSet.noneOf(Material.class);
+    private volatile boolean anyMaterial;
+    // No materials were remembered yet, e.g. right after updating; items of any material are checked this session
+    private boolean firstRun;
+
+    public ItemClassifier(CheeseKeys keys, File dataFolder, Logger logger) {
+        this.keys = keys;
+        this.materialsFile = new File(dataFolder, "known_item_materials.txt");
+        this.logger = logger;
+        loadMaterials();
+    }
+
+    /**
+     * Starts a new round of learning for a config reload. Learned materials are kept so items made under an
+     * earlier config are still recognised.
+     */
+    public void beginReload() {
+        anyMaterial = firstRun;
+    }
+
+    /**
+     * Records that a factory item was built from this material. Items from another plugin turn material
+     * rejection off, since their material is not known until that plugin has loaded its items.
+     */
+    public void learn(Material material, boolean external) {
+        if (external) {
+            anyMaterial = true;
+        }
+        if (!materials.contains(material)) {
+            synchronized (this) {
+                EnumSet<Material> grown = materials.clone();
+                if (grown.add(material)) {
+                    materials = grown;
+                    saveMaterials(grown);
+                }
+            }
+        }
+    }
+
+    private void loadMaterials() {
+        if (!materialsFile.exists()) {
+            firstRun = true;
+            anyMaterial = true;
+            return;
+        }
+        EnumSet<Material> known = EnumSet.noneOf(Material.class);
+        try {
+            for (String line : Files.readAllLines(materialsFile.toPath())) {
+                Material material = Material.matchMaterial(line.trim());
+                if (material != null) {
+                    known.add(material);
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read " + materialsFile.getName() + "; items made with materials no longer in the config may not be recognised: " + e.getMessage());
+        }
+        materials = known;
+    }
+
+    private void saveMaterials(EnumSet<Material> known) {
+        List<String> lines = new ArrayList<>();
+        for (Material material : known) {
+            lines.add(material.name());
+        }
+        try {
+            Files.createDirectories(materialsFile.getParentFile().toPath());
+            Files.write(materialsFile.toPath(), lines);
+        } catch (IOException e) {
+            logger.warning("Failed to save " + materialsFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    public FactoryItem classify(ItemStack stack) {
+        if (stack == null) {
+            return FactoryItem.NONE;
+        }
+        Material type = stack.getType();
+        if (type.isAir() || (!anyMaterial && !materials.contains(type)) || !stack.hasItemMeta()) {
+            return FactoryItem.NONE;
+        }
+        PersistentDataContainerView pdc = stack.getPersistentDataContainer();
+        if (pdc.has(keys.curd(), PersistentDataType.BYTE)) {
+            return FactoryItem.CURD;
+        }
+        Integer cheeseNumber = pdc.get(keys.cheeseNumber(), PersistentDataType.INTEGER);
+        if (cheeseNumber != null) {
+            return cheeses.computeIfAbsent(cheeseNumber, number -> new FactoryItem(FactoryItem.Kind.CHEESE, number, null));
+        }
+        String legacyId = pdc.get(keys.cheeseId(), PersistentDataType.STRING);
+        if (legacyId != null) {
+            return legacyCheeses.computeIfAbsent(legacyId, id -> new FactoryItem(FactoryItem.Kind.CHEESE, 0, id));
+        }
+        if (pdc.has(keys.bacteria(), PersistentDataType.BYTE)) {
+            return FactoryItem.BACTERIA;
+        }
+        if (pdc.has(keys.inoculatedMilk(), PersistentDataType.BYTE)) {
+            return FactoryItem.INOCULATED_MILK;
+        }
+        if (pdc.has(keys.barrelItem(), PersistentDataType.BYTE)) {
+            return FactoryItem.BARREL;
+        }
+        return FactoryItem.NONE;
+    }
+
+    public boolean is(ItemStack stack, FactoryItem.Kind kind) {
+        return classify(stack).kind() == kind;
+    }
+}
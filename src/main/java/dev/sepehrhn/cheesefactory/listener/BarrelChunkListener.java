@@ -0,0 +1,27 @@
+package dev.sepehrhn.cheesefactory.listener;
+
+import dev.sepehrhn.cheesefactory.barrel.CheeseBarrelManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+public class BarrelChunkListener implements Listener {
+
+    private final CheeseBarrelManager barrelManager;
+
+    public BarrelChunkListener(CheeseBarrelManager barrelManager) {
+        this.barrelManager = barrelManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        barrelManager.activateChunk(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        barrelManager.deactivateChunk(event.getChunk());
+    }
+}
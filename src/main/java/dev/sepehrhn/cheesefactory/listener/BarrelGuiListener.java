@@ -1,11 +1,14 @@
 package dev.sepehrhn.cheesefactory.listener;
 
 import dev.sepehrhn.cheesefactory.barrel.CheeseBarrelManager;
+import dev.sepehrhn.cheesefactory.barrel.CheeseBarrelState;
 import org.bukkit.Material;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.EquipmentSlot;
 
@@ -56,4 +59,19 @@ public class BarrelGuiListener implements Listener {
             barrelManager.closeBarrel(player, block);
         }
     }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBarrelClick(InventoryClickEvent event) {
+        // Any click while a barrel is open may move curd in or out of it, including shift-clicks in the player inventory
+        if (event.getView().getTopInventory().getHolder() instanceof CheeseBarrelState state) {
+            barrelManager.wake(state);
+        }
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBarrelDrag(InventoryDragEvent event) {
+        if (event.getView().getTopInventory().getHolder() instanceof CheeseBarrelState state) {
+            barrelManager.wake(state);
+        }
+    }
 }
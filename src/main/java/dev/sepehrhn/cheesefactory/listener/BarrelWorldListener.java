@@ -0,0 +1,33 @@
+package dev.sepehrhn.cheesefactory.listener;
+
+import dev.sepehrhn.cheesefactory.barrel.CheeseBarrelManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+public class BarrelWorldListener implements Listener {
+
+    private final CheeseBarrelManager barrelManager;
+
+    public BarrelWorldListener(CheeseBarrelManager barrelManager) {
+        this.barrelManager = barrelManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        barrelManager.saveAsync();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        barrelManager.loadWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        barrelManager.unloadWorld(event.getWorld());
+    }
+}
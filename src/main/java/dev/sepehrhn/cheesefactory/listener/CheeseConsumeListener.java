@@ -3,35 +3,50 @@ package dev.sepehrhn.cheesefactory.listener;
 import dev.sepehrhn.cheesefactory.cheese.CheeseDefinition;
 import dev.sepehrhn.cheesefactory.cheese.CheeseEffectDefinition;
 import dev.sepehrhn.cheesefactory.cheese.CheeseRegistry;
-import dev.sepehrhn.cheesefactory.item.CheeseKeys;
+import dev.sepehrhn.cheesefactory.item.FactoryItem;
+import dev.sepehrhn.cheesefactory.item.ItemClassifier;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerItemConsumeEvent;
-import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 
 public class CheeseConsumeListener implements Listener {
 
-    private final CheeseKeys keys;
+    private final ItemClassifier classifier;
     private final CheeseRegistry registry;
 
-    public CheeseConsumeListener(CheeseKeys keys, CheeseRegistry registry) {
-        this.keys = keys;
+    public CheeseConsumeListener(ItemClassifier classifier, CheeseRegistry registry) {
+        this.classifier = classifier;
         this.registry = registry;
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onConsume(PlayerItemConsumeEvent event) {
-        var item = event.getItem();
-        if (item == null || !item.hasItemMeta()) {
+        FactoryItem item = classifier.classify(event.getItem());
+        if (!item.is(FactoryItem.Kind.CHEESE)) {
             return;
         }
-        var pdc = item.getItemMeta().getPersistentDataContainer();
-        String id = pdc.get(keys.cheeseId(), PersistentDataType.STRING);
-        if (id == null) {
-            return;
+        CheeseDefinition def;
+        if (item.legacyCheeseId() != null) {
+            def = registry.getById(item.legacyCheeseId()).orElse(null);
+            upgradeHeldStack(event);
+        } else {
+            def = registry.getByNumber(item.cheeseNumber());
+        }
+        if (def != null) {
+            applyEffects(def, event);
+        }
+    }
+
+    /**
+     * Converts the rest of a stack of old string-tagged cheese, so it stacks with newly made cheese.
+     */
+    private void upgradeHeldStack(PlayerItemConsumeEvent event) {
+        ItemStack held = event.getPlayer().getInventory().getItem(event.getHand());
+        if (held.isSimilar(event.getItem())) {
+            registry.upgradeLegacy(held);
         }
-        registry.getById(id).ifPresent(def -> applyEffects(def, event));
     }
 
     private void applyEffects(CheeseDefinition def, PlayerItemConsumeEvent event) {
@@ -0,0 +1,21 @@
+package dev.sepehrhn.cheesefactory.listener;
+
+import dev.sepehrhn.cheesefactory.barrel.FermentationEffects;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+public class FermentationEffectsListener implements Listener {
+
+    private final FermentationEffects effects;
+
+    public FermentationEffectsListener(FermentationEffects effects) {
+        this.effects = effects;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        effects.forget(event.getPlayer());
+    }
+}